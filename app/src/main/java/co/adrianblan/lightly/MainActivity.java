@@ -1,8 +1,5 @@
 package co.adrianblan.lightly;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
-import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -15,47 +12,51 @@ import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.support.v7.widget.SwitchCompat;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.SeekBar;
 import android.widget.TextView;
 
-import com.google.gson.Gson;
-
-import org.parceler.Parcels;
-
-import java.text.ParseException;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicReference;
 
 import butterknife.BindDrawable;
 import butterknife.ButterKnife;
 import butterknife.Bind;
 import butterknife.OnCheckedChanged;
 import butterknife.OnClick;
-import co.adrianblan.lightly.data.LocationData;
-import co.adrianblan.lightly.data.SunriseSunsetData;
-import co.adrianblan.lightly.data.SunriseSunsetDataWrapper;
+import co.adrianblan.lightly.data.SunCycleRepository;
+import co.adrianblan.lightly.data.SunCycleSnapshot;
 import co.adrianblan.lightly.helpers.Constants;
 import co.adrianblan.lightly.helpers.PermissionHandler;
+import co.adrianblan.lightly.helpers.StartupTimer;
+import co.adrianblan.lightly.helpers.Tracer;
 import co.adrianblan.lightly.network.DataRequestHandler;
+import co.adrianblan.lightly.refresh.RefreshScheduler;
 import co.adrianblan.lightly.service.OverlayService;
+import co.adrianblan.lightly.service.OverlayStateHandler;
+import co.adrianblan.lightly.service.OverlayUpdateSequence;
 import co.adrianblan.lightly.suncycle.SunCycle;
-import co.adrianblan.lightly.suncycle.SunCycleColorHandler;
+import co.adrianblan.lightly.suncycle.SunCycleColorSettings;
 import co.adrianblan.lightly.suncycle.SunCycleColorWrapper;
 import co.adrianblan.lightly.view.SunCycleView;
-import retrofit.Call;
-import retrofit.Callback;
-import retrofit.Response;
-import retrofit.Retrofit;
 
 /**
  * The main class of the application. Handles all user interactions and services from the main screen.
+ *
+ * All location and sun cycle data comes as snapshots from the SunCycleRepository, which does all
+ * of its work in the background. This class only renders the snapshots that are ready.
  */
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements SunCycleRepository.Listener {
 
     @Bind(R.id.switch_enabled)
     SwitchCompat switchEnabled;
+    @Bind(R.id.switch_adaptive_brightness)
+    SwitchCompat switchAdaptiveBrightness;
 
     // Seekbars
     @Bind(R.id.seekbar_night_color)
@@ -95,97 +96,75 @@ public class MainActivity extends AppCompatActivity {
     private static final int SEEKBAR_DAY_PROGRESS_DEFAULT_VALUE = 80;
     private static final int SEEKBAR_NIGHT_PROGRESS_DEFAULT_VALUE = 80;
 
-    private Gson gson;
-    private AlarmManager alarmManager;
+    // Where earlier versions stored whether the overlay is active, before the overlay stored it itself
+    private static final String LEGACY_KEY_IS_OVERLAY_SERVICE_ACTIVE = "isOverlayServiceActive";
 
     private boolean isOverlayServiceActive;
-    private boolean hasDummyData;
-    private LocationData locationData;
-    private SunriseSunsetData sunriseSunsetData;
+    private SunCycleSnapshot snapshot;
     private SunCycle sunCycle;
-    private SunCycleColorHandler sunCycleColorHandler;
-    private DataRequestHandler dataRequestHandler;
+    private final AtomicReference<SunCycleColorSettings> colorSettings = new AtomicReference<>();
+    private SunCycleRepository sunCycleRepository;
     private PermissionHandler permissionHandler;
+    private OverlayStateHandler overlayStateHandler;
 
     private Intent overlayIntent;
-    private PendingIntent pendingOverlayIntent;
+    private StartupTimer startupTimer;
 
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        startupTimer = StartupTimer.start();
         super.onCreate(savedInstanceState);
+        startupTimer.mark("super.onCreate");
+
         setContentView(R.layout.activity_main);
-        ButterKnife.bind(this);
+        startupTimer.mark("inflate");
 
-        gson = new Gson();
-        alarmManager = (AlarmManager) this.getSystemService(Context.ALARM_SERVICE);
+        ButterKnife.bind(this);
+        startupTimer.mark("bind");
 
         // We request permissions to draw over the screen, if we don't have permissions
         permissionHandler = new PermissionHandler();
+        overlayStateHandler = new OverlayStateHandler(this);
+
+        // Loads and requests all location and sun cycle data in the background
+        sunCycleRepository = new SunCycleRepository(this, this);
 
-        // Request data from REST APIs
-        dataRequestHandler = new DataRequestHandler();
+        // Keeps the stored data fresh, so that we never have to wait for it here
+        new RefreshScheduler(this).schedule();
+        startupTimer.mark("handlers");
 
         // Restore data from SharedPreferences
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
 
-        isOverlayServiceActive = sharedPreferences.getBoolean("isOverlayServiceActive", false);
+        // The overlay might have been toggled from a tile or widget, so the service state is used
+        isOverlayServiceActive = overlayStateHandler.isActive() || migrateLegacyActiveState(sharedPreferences);
         switchEnabled.setChecked(isOverlayServiceActive);
 
         // Update SeekBars
         seekBarNightColor.setProgress(sharedPreferences.getInt("seekBarNightColorProgress", SEEKBAR_DAY_PROGRESS_DEFAULT_VALUE));
         seekBarNightBrightness.setProgress(sharedPreferences.getInt("seekBarNightBrightnessProgress", SEEKBAR_NIGHT_PROGRESS_DEFAULT_VALUE));
+        switchAdaptiveBrightness.setChecked(sharedPreferences.getBoolean("adaptiveBrightness", false));
 
-        hasDummyData = sharedPreferences.getBoolean("hasDummyData", true);
-
-        // If we have stored previous data, retrieve it. Otherwise populate with dummy data.
-        if(!hasDummyData) {
-            String locationDataJson = sharedPreferences.getString("locationData", null);
-            locationData = gson.fromJson(locationDataJson, LocationData.class);
-
-            String sunriseSunsetDataJson = sharedPreferences.getString("sunriseSunsetData", null);
-            sunriseSunsetData = gson.fromJson(sunriseSunsetDataJson, SunriseSunsetData.class);
-        } else {
-            locationData = LocationData.getDummyLocationData();
-            sunriseSunsetData = SunriseSunsetData.getDummySunriseSunsetData();
-        }
-
-
-
-        try {
-            // We create a SunCycle using the sunrise and sunset data
-            Date currentDate = new Date();
-            sunCycle = new SunCycle(currentDate, sunriseSunsetData);
-
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
-
-        // Update colors
-        String sunCycleColorHandlerJson = sharedPreferences.getString("sunCycleColorHandler", null);
-
-        if(sunCycleColorHandlerJson != null) {
-            sunCycleColorHandler = gson.fromJson(sunCycleColorHandlerJson, SunCycleColorHandler.class);
-        } else {
-            System.err.println("No sun cycle color handler saved.");
-            sunCycleColorHandler = new SunCycleColorHandler(seekBarNightColor.getProgress(),
-                    seekBarNightBrightness.getProgress());
-        }
+        // Update colors, the intensities of the settings always follow the SeekBars
+        colorSettings.set(SunCycleColorSettings.of(seekBarNightColor.getProgress(),
+                seekBarNightBrightness.getProgress()));
+        startupTimer.mark("preferences");
 
         // Seekbar listener
         SeekBar.OnSeekBarChangeListener seekBarChangeListener = new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean b) {
 
-                // Update color handler with new colors
+                // Publish new settings with the new colors
                 if(seekBar.equals(seekBarNightColor)) {
-                    sunCycleColorHandler.setColorFilterIntensity(progress);
+                    colorSettings.set(colorSettings.get().withColorFilterIntensity(progress));
                 } else if (seekBar.equals(seekBarNightBrightness)) {
-                    sunCycleColorHandler.setBrightnessFilterIntensity(progress);
+                    colorSettings.set(colorSettings.get().withBrightnessFilterIntensity(progress));
                 }
 
                 startOverlayServiceTemporary();
-                updateView(sunCycle);
+                updateView();
             }
 
             @Override
@@ -201,6 +180,7 @@ public class MainActivity extends AppCompatActivity {
 
         seekBarNightColor.setOnSeekBarChangeListener(seekBarChangeListener);
         seekBarNightBrightness.setOnSeekBarChangeListener(seekBarChangeListener);
+        startupTimer.mark("listeners");
 
         // Add sun drawables that the SunCycle will draw over the cycle
         ArrayList<Drawable> sunDrawables = new ArrayList<>();
@@ -209,159 +189,162 @@ public class MainActivity extends AppCompatActivity {
         sunDrawables.add(brightnessMediumDrawable);
         sunDrawables.add(brightnessLowDrawable);
         sunCycleView.setSunDrawables(sunDrawables);
-
-        // Automatically request location data if we only have dummy data
-        if(hasDummyData) {
-            requestLocationData();
-        }
+        startupTimer.mark("drawables");
 
         overlayIntent = new Intent(this, OverlayService.class);
 
-        // If the service was active before, start it again
-        if (isOverlayServiceActive) {
-            startOverlayService();
-        }
-    }
+        // The overlay service is started again once the first snapshot is ready
+        sunCycleRepository.load();
+        startupTimer.mark("onCreate");
 
-    @Override
-    protected void onStart() {
-        super.onStart();
-        updateView(sunCycle);
+        // Records the time to the first frame of the sun cycle
+        sunCycleView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                sunCycleView.getViewTreeObserver().removeOnPreDrawListener(this);
+                startupTimer.mark("first draw");
+                return true;
+            }
+        });
     }
 
     /**
-     * Requests the LocationData of the user, and updates the view accordingly. On successful
-     * request, attempts to also request SunriseSunsetData.
+     * Returns whether earlier versions left the overlay active, which they stored in our own
+     * preferences. Only the overlay process writes its state, so the overlay is started again and
+     * stores it itself. The old key is removed once it has, or if the overlay was not active.
      */
-    private void requestLocationData() {
+    private boolean migrateLegacyActiveState(SharedPreferences sharedPreferences) {
+        if(!sharedPreferences.contains(LEGACY_KEY_IS_OVERLAY_SERVICE_ACTIVE)) {
+            return false;
+        }
 
-        Call<LocationData> locationDataCall = dataRequestHandler.getLocationDataCall();
+        boolean isLegacyActive = sharedPreferences.getBoolean(LEGACY_KEY_IS_OVERLAY_SERVICE_ACTIVE, false);
 
-        // Asynchronous callback for the request
-        locationDataCall.enqueue(new Callback<LocationData>() {
+        if(!isLegacyActive || overlayStateHandler.getState().hasActiveState()) {
+            sharedPreferences.edit().remove(LEGACY_KEY_IS_OVERLAY_SERVICE_ACTIVE).apply();
+            return false;
+        }
 
-            @Override
-            public void onResponse(Response<LocationData> response, Retrofit retrofit) {
-                LocationData locationDataTemp = response.body();
-
-                // Check that our data was successfully fetched
-                if(locationDataTemp.isValid()) {
-                    locationData = locationDataTemp;
-                    locationBody.setText(locationData.getRegionName() + ", " + locationData.getCountry());
-
-                    // As the request for location was successful, we now request for sun cycle data
-                    requestSunCycleData(locationData.getLatitude(), locationData.getLongitude());
-                } else {
-                    System.err.println("Error: Location data is null");
-                }
-            }
+        return true;
+    }
 
-            @Override
-            public void onFailure(Throwable t) {
-                System.err.println("Failed to get location data" + t.toString());
-
-                // Snackbar where user can retry fetching data
-                Snackbar.make(lightlyMainView, "Oops! Unable to connect to server", Snackbar.LENGTH_LONG)
-                        .setAction("Retry", new View.OnClickListener() {
-                            @Override
-                            public void onClick(View v) {
-                                requestLocationData();
-                            }
-                        }).show();
-            }
-        });
+    @Override
+    protected void onRestart() {
+        super.onRestart();
+
+        // The overlay might have been toggled from a tile or widget while we were in the background
+        isOverlayServiceActive = overlayStateHandler.isActive();
+        switchEnabled.setChecked(isOverlayServiceActive);
     }
 
-    /** Requests the SunriseSunsetData using the latitude and longitude of a location. */
-    private void requestSunCycleData (Double latitude, Double longitude) {
+    @Override
+    protected void onStart() {
+        super.onStart();
+        updateView();
+        startupTimer.mark("onStart");
+    }
 
-        Call<SunriseSunsetDataWrapper> sunriseSunsetDataWrapperCall =
-                dataRequestHandler.getSunriseSunsetDataCall(
-                        Double.toString(latitude), Double.toString(longitude)
-                );
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
 
-        // Asynchronous callback for the request
-        sunriseSunsetDataWrapperCall.enqueue(new Callback<SunriseSunsetDataWrapper>() {
+        // Cancels all requests in flight, so that nothing keeps a reference to us
+        sunCycleRepository.close();
+    }
 
-            @Override
-            public void onResponse(Response<SunriseSunsetDataWrapper> response, Retrofit retrofit) {
-                SunriseSunsetDataWrapper sunriseSunsetDataWrapper = response.body();
+    @Override
+    public void onSnapshot(SunCycleSnapshot snapshot) {
 
-                // Check that our data was successfully fetched
-                if(sunriseSunsetDataWrapper != null && sunriseSunsetDataWrapper.getResults().isValid()) {
-                    SunriseSunsetData sunriseSunsetDataTemp = sunriseSunsetDataWrapper.getResults();
+        // Automatically request location data if we only have dummy data
+        if(this.snapshot == null && snapshot.hasDummyData()) {
+            refreshLocation();
+        }
 
-                    try {
-                        // We create a SunCycle using the sunrise and sunset data
-                        Date currentDate = new Date();
-                        sunCycle = new SunCycle(currentDate, sunriseSunsetDataTemp);
+        this.snapshot = snapshot;
+        startupTimer.mark("first snapshot");
 
-                        sunriseSunsetData = sunriseSunsetDataTemp;
-                        hasDummyData = false;
+        // The snapshot hands out a copy, which is ours to update the position of the sun in
+        sunCycle = snapshot.getSunCycle();
+        updateView();
 
-                        updateView(sunCycle);
+        // Keep the overlay service following the latest sun cycle
+        if(isOverlayServiceActive) {
+            startOverlayService();
+        }
+    }
 
-                        // Snackbar that informs of the updated location
-                        Snackbar.make(lightlyMainView, "Location updated", Snackbar.LENGTH_SHORT).show();
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        StartupTimer.dump(prefix, writer);
+        DataRequestHandler.getNetworkMetrics().dump(prefix, writer);
+    }
 
-                    } catch (ParseException e) {
-                        System.err.println("Error parsing sunrise and and sunset data in SunCycle");
-                        e.printStackTrace();
-                    }
-                } else {
-                    System.err.println("Error: sunrise sunset data is null");
-                }
-            }
+    @Override
+    public void onRefreshFinished(boolean isSuccessful) {
+        if(isSuccessful) {
 
-            @Override
-            public void onFailure(Throwable t) {
-                System.err.println("Error: Failed to request sunrise and sunset data.\n" + t.toString());
-
-                // Snackbar where user can retry fetching data
-                Snackbar.make(lightlyMainView, "Oops! Unable to connect to server", Snackbar.LENGTH_LONG)
-                        .setAction("Retry", new View.OnClickListener() {
-                            @Override
-                            public void onClick(View v) {
-                                requestLocationData();
-                            }
-                        }).show();
-            }
-        });
+            // Snackbar that informs of the updated location
+            Snackbar.make(lightlyMainView, "Location updated", Snackbar.LENGTH_SHORT).show();
+        } else {
+
+            // Snackbar where user can retry fetching data
+            DataRequestHandler.getNetworkMetrics().recordRetryPrompt();
+            Snackbar.make(lightlyMainView, "Oops! Unable to connect to server", Snackbar.LENGTH_LONG)
+                    .setAction("Retry", new View.OnClickListener() {
+                        @Override
+                        public void onClick(View v) {
+                            sunCycleRepository.refreshLocation();
+                        }
+                    }).show();
+        }
     }
 
-    /** Takes a SunCycle, and updates the view according to the data inside */
-    private void updateView(SunCycle sunCycle) {
+    /** Updates the view according to the colors and the latest snapshot */
+    private void updateView() {
+        Tracer.beginSection("MainActivity.updateView");
+        try {
+            final float COLOR_EMPHASIS = 4f;
+            final float BRIGHTNESS_EMPHASIS = 1.5f;
+
+            // Read the settings once, so that everything is drawn from the same snapshot
+            SunCycleColorSettings currentColorSettings = colorSettings.get();
 
-        final float COLOR_EMPHASIS = 4f;
-        final float BRIGHTNESS_EMPHASIS = 1.5f;
+            // Exaggerate colors for emphasis
+            SunCycleColorWrapper nightColor = new SunCycleColorWrapper(currentColorSettings.getColorFilterColor());
+            nightColor.setAlpha(Math.min((int) (nightColor.getAlpha() * COLOR_EMPHASIS), 255));
+            nightColorCircle.setColorFilter(nightColor.getColor());
 
-        // Exaggerate colors for emphasis
-        SunCycleColorWrapper nightColor = sunCycleColorHandler.getColorFilterWrapper();
-        nightColor.setAlpha(Math.min((int) (nightColor.getAlpha() * COLOR_EMPHASIS), 255));
-        nightColorCircle.setColorFilter(nightColor.getColor());
+            SunCycleColorWrapper nightBrightness = new SunCycleColorWrapper(currentColorSettings.getBrightnessFilterColor());
+            nightBrightness.setAlpha(Math.min((int) (nightBrightness.getAlpha() * BRIGHTNESS_EMPHASIS), 255));
+            nightBrightnessCircle.setColorFilter(nightBrightness.getColor());
 
-        SunCycleColorWrapper nightBrightness = sunCycleColorHandler.getBrightnessFilterWrapper();
-        nightBrightness.setAlpha(Math.min((int) (nightBrightness.getAlpha() * BRIGHTNESS_EMPHASIS), 255));
-        nightBrightnessCircle.setColorFilter(nightBrightness.getColor());
+            // Set seekbar value text
+            nightColorValue.setText(currentColorSettings.getColorTemperature() + "K");
+            nightBrightnessValue.setText(currentColorSettings.getBrightnessPercent() + "%");
 
-        // Set seekbar value text
-        nightColorValue.setText(sunCycleColorHandler.getColorTemperature() + "K");
-        nightBrightnessValue.setText(sunCycleColorHandler.getBrightnessPercent() + "%");
+            // Nothing more to show until the first snapshot is ready
+            if(snapshot == null) {
+                return;
+            }
 
-        locationBody.setText(locationData.getHumanizedLocation());
+            locationBody.setText(snapshot.getLocationData().getHumanizedLocation());
 
-        // Update sun position to current time
-        sunCycle.updateSunPositionHorizontal(new Date());
+            // Update sun position to current time
+            sunCycle.updateSunPositionHorizontal(new Date());
 
-        sunCycleView.setNightColor(sunCycleColorHandler.getOverlayColorMax());
-        sunCycleView.setCycleOffsetHorizontal(sunCycle.getCycleOffsetHorizontal());
-        sunCycleView.setSunPositionHorizontal(sunCycle.getSunPositionHorizontal());
-        sunCycleView.setTwilightPositionVertical(sunCycle.getTwilightPositionVertical());
+            sunCycleView.setNightColor(currentColorSettings.getOverlayColorMax());
+            sunCycleView.setCycleOffsetHorizontal(sunCycle.getCycleOffsetHorizontal());
+            sunCycleView.setSunPositionHorizontal(sunCycle.getSunPositionHorizontal());
+            sunCycleView.setTwilightPositionVertical(sunCycle.getTwilightPositionVertical());
 
-        sunCycleStatus.setText(sunCycle.getStatusText());
+            sunCycleStatus.setText(sunCycle.getStatusText());
 
-        // Redraw the view
-        sunCycleView.invalidate();
+            // Redraw the view
+            sunCycleView.invalidate();
+        } finally {
+            Tracer.endSection();
+        }
     }
 
     /** Restarts the overlay service if the active flag is set, otherwise stops the service */
@@ -373,53 +356,53 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    /** Starts the overlay service, if we have permission to do so. Also sends all required info */
+    /**
+     * Starts the overlay service, if we have permission to do so. Also sends all required info.
+     * The service itself keeps the color up to date with a repeating alarm.
+     */
     private void startOverlayService() {
-        if(permissionHandler.hasDrawOverlayPermission(this)) {
-
-            cancelPendingOverlayIntents();
-
-            Bundle bundle = new Bundle();
-
-            // We are sending these two objects every time the filter updates, which is bad
-            // But it's only two parcelable POJOs, and premature optimization is the root of all evil
-            bundle.putParcelable("sunCycle", Parcels.wrap(sunCycle));
-            bundle.putParcelable("sunCycleColorHandler", Parcels.wrap(sunCycleColorHandler));
-
-            overlayIntent.putExtras(bundle);
-            startService(overlayIntent);
+        Tracer.beginSection("MainActivity.startOverlayService");
+        try {
+            if(permissionHandler.hasDrawOverlayPermission(this)) {
 
-            isOverlayServiceActive = true;
+                isOverlayServiceActive = true;
 
-            pendingOverlayIntent = PendingIntent.getService(this, Constants.SERVICE_OVERLAY_REQUEST_CODE,
-                    overlayIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+                // The service is started once the first snapshot is ready
+                if(sunCycle == null) {
+                    return;
+                }
 
-            // Repeat the intent in 15 minutes, every 15 minutes
-            // Overwrites previous alarms because they have the same ID
-            alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
-                    AlarmManager.INTERVAL_FIFTEEN_MINUTES, AlarmManager.INTERVAL_FIFTEEN_MINUTES,
-                    pendingOverlayIntent);
+                // The service calculates the sun cycles of the coming days itself, unless the location is a dummy
+                startService(OverlayUpdateSequence.tag(OverlayService.createSunCycleIntent(this, sunCycle,
+                        snapshot.hasDummyData() ? null : snapshot.getLocationData(), colorSettings.get(),
+                        switchAdaptiveBrightness.isChecked())));
+            }
+        } finally {
+            Tracer.endSection();
         }
     }
 
     /** Starts a temporary overlay service with a temporary color, without setting the active flag */
     private void startOverlayServiceTemporary() {
-        if(permissionHandler.hasDrawOverlayPermission(this)) {
+        Tracer.beginSection("MainActivity.startOverlayServiceTemporary");
+        try {
+            if(permissionHandler.hasDrawOverlayPermission(this)) {
 
-            Intent temporaryOverlayIntent = new Intent(this, OverlayService.class);
-            Bundle bundle = new Bundle();
+                Intent temporaryOverlayIntent = new Intent(this, OverlayService.class);
+                Bundle bundle = new Bundle();
 
-            // Sends the strongest color on the cycle
-            bundle.putInt("filterColor", sunCycleColorHandler.getOverlayColorMax());
-            temporaryOverlayIntent.putExtras(bundle);
-            startService(temporaryOverlayIntent);
+                // Sends the strongest color on the cycle
+                bundle.putInt(OverlayService.EXTRA_FILTER_COLOR, colorSettings.get().getOverlayColorMax());
+                temporaryOverlayIntent.putExtras(bundle);
+                startService(OverlayUpdateSequence.tag(temporaryOverlayIntent));
+            }
+        } finally {
+            Tracer.endSection();
         }
     }
 
-    /** Stops the overlay service */
+    /** Stops the overlay service, which also cancels its repeating alarm */
     private void stopOverlayService() {
-        cancelPendingOverlayIntents();
-
         if(overlayIntent != null) {
             stopService(overlayIntent);
         }
@@ -427,17 +410,29 @@ public class MainActivity extends AppCompatActivity {
         isOverlayServiceActive = false;
     }
 
-    /** If we have a pending overlay intent already, cancel it */
-    private void cancelPendingOverlayIntents() {
-        if(pendingOverlayIntent != null) {
-            alarmManager.cancel(pendingOverlayIntent);
-        }
-    }
-
     /** When the user clicks the update location button, we refresh all location data */
     @OnClick(R.id.location_button)
     public void onClick() {
-        requestLocationData();
+        refreshLocation();
+    }
+
+    /** Refreshes all location data, asking for the permission to use the location of the platform first */
+    private void refreshLocation() {
+        if(permissionHandler.hasCoarseLocationPermission(this)) {
+            sunCycleRepository.refreshLocation();
+        } else {
+            permissionHandler.requestCoarseLocationPermission(this);
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+
+        // Without the permission we still have the IP lookup
+        if(requestCode == Constants.LOCATION_PERMISSION_REQUEST_CODE) {
+            sunCycleRepository.refreshLocation();
+        }
     }
 
     /** When the user checks the enabled switch, we toggle the overlay */
@@ -459,6 +454,14 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /** When the user checks the adaptive brightness switch, we send the new plan to the overlay */
+    @OnCheckedChanged(R.id.switch_adaptive_brightness)
+    public void onAdaptiveBrightnessCheckedChanged(boolean isChecked) {
+        if(isOverlayServiceActive) {
+            startOverlayService();
+        }
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == Constants.OVERLAY_PERMISSION_REQUEST_CODE) {
@@ -487,19 +490,23 @@ public class MainActivity extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
 
-        // Save our data when lifecycle is ending
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(this).edit();
+        Tracer.beginSection("MainActivity.onPause");
+        try {
+            // Save our data when lifecycle is ending
+            SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(this).edit();
 
-        editor.putBoolean("isOverlayServiceActive", isOverlayServiceActive);
-        editor.putBoolean("hasDummyData", hasDummyData);
-        editor.putInt("seekBarNightColorProgress", seekBarNightColor.getProgress());
-        editor.putInt("seekBarNightBrightnessProgress", seekBarNightBrightness.getProgress());
+            // The settings are immutable, so this is consistent even if they change meanwhile
+            SunCycleColorSettings currentColorSettings = colorSettings.get();
+            editor.putInt("seekBarNightColorProgress", currentColorSettings.getColorFilterIntensity());
+            editor.putInt("seekBarNightBrightnessProgress", currentColorSettings.getBrightnessFilterIntensity());
+            editor.putBoolean("adaptiveBrightness", switchAdaptiveBrightness.isChecked());
 
-        // Store data with GSON
-        editor.putString("locationData", gson.toJson(locationData));
-        editor.putString("sunriseSunsetData", gson.toJson(sunriseSunsetData));
-        editor.putString("sunCycleColorHandler", gson.toJson(sunCycleColorHandler));
+            // The color handler is no longer stored, since the settings follow the SeekBars
+            editor.remove("sunCycleColorHandler");
 
-        editor.apply();
+            editor.apply();
+        } finally {
+            Tracer.endSection();
+        }
     }
 }
@@ -0,0 +1,82 @@
+package co.adrianblan.lightly.ambient;
+
+/**
+ * Adapts the brightness filter to the ambient light, by feeding an AmbientLightSource through an
+ * AmbientLightFilter. The listener is only called when the light level changes, which is rarely.
+ *
+ * The light sensor only reports changes, so after a step in the light no more samples might
+ * arrive. As long as the held light can still change the level, the listener is asked to call
+ * update() after a while, which smooths it in.
+ */
+public class AdaptiveBrightnessHandler implements AmbientLightSource.Listener {
+
+    public interface Listener {
+
+        /** Called when the light level has changed, and the brightness filter should be updated */
+        void onAmbientLightLevelChanged();
+
+        /** Called while the light level is settling, and update() should be called after a while */
+        void onAmbientLightSettling();
+    }
+
+    private final AmbientLightSource ambientLightSource;
+    private final AmbientLightFilter ambientLightFilter;
+    private final Listener listener;
+    private boolean isStarted;
+
+    public AdaptiveBrightnessHandler(AmbientLightSource ambientLightSource, AmbientLightFilter ambientLightFilter,
+                                     Listener listener) {
+        this.ambientLightSource = ambientLightSource;
+        this.ambientLightFilter = ambientLightFilter;
+        this.listener = listener;
+    }
+
+    /** Starts listening to the ambient light, if we are not already */
+    public void start() {
+        if(!isStarted) {
+            isStarted = ambientLightSource.start(this);
+        }
+    }
+
+    /** Stops listening, and forgets the light so that no old level is used once we start again */
+    public void stop() {
+        if(isStarted) {
+            ambientLightSource.stop();
+            ambientLightFilter.reset();
+            isStarted = false;
+        }
+    }
+
+    public boolean isStarted() {
+        return isStarted;
+    }
+
+    /** Returns the brightness filter intensity [0, 100] to use instead of the one of the user */
+    public int getBrightnessFilterIntensity(int brightnessFilterIntensity) {
+        return ambientLightFilter.getBrightnessFilterIntensity(brightnessFilterIntensity);
+    }
+
+    /** Smooths in the light that was last sampled up to now, since no new samples might arrive */
+    public void update() {
+        if(isStarted) {
+            onFiltered(ambientLightFilter.advanceTo(ambientLightSource.getTimeMillis()));
+        }
+    }
+
+    @Override
+    public void onAmbientLight(float lux, long timeMillis) {
+        if(isStarted) {
+            onFiltered(ambientLightFilter.addSample(lux, timeMillis));
+        }
+    }
+
+    private void onFiltered(boolean isLevelChanged) {
+        if(isLevelChanged) {
+            listener.onAmbientLightLevelChanged();
+        }
+
+        if(ambientLightFilter.isSettling()) {
+            listener.onAmbientLightSettling();
+        }
+    }
+}
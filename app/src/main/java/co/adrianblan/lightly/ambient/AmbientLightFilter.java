@@ -0,0 +1,119 @@
+package co.adrianblan.lightly.ambient;
+
+/**
+ * Smooths samples of the ambient light, and turns them into a few discrete light levels.
+ *
+ * The samples are smoothed with a low-pass filter over their own timestamps, so that batched
+ * samples are smoothed the same as samples that arrive one by one. The light sensor only reports
+ * when the light changes, so each sample is held until the next one, and advanceTo() smooths the
+ * held sample in while no new samples arrive. The level only changes once
+ * the smoothed lux has crossed a threshold by a margin, so that light that hovers around a
+ * threshold never makes the overlay flicker.
+ */
+public class AmbientLightFilter {
+
+    // Lux where the light levels begin, from a dark room to daylight
+    private static final float[] LEVEL_THRESHOLDS = {10f, 50f, 200f, 1000f};
+    private static final int LEVEL_MAX = LEVEL_THRESHOLDS.length;
+
+    // How far past a threshold the smoothed lux has to go, as a fraction of the threshold
+    private static final float HYSTERESIS = 0.25f;
+
+    // Time constant of the low-pass filter in milliseconds
+    private static final float SMOOTHING_TIME_CONSTANT = 30 * 1000f;
+
+    private boolean hasSample;
+    private float heldLux;
+    private float smoothedLux;
+    private long lastSampleTime;
+    private int level;
+
+    /** Adds a sample in lux at a time in milliseconds, and returns whether the light level changed */
+    public boolean addSample(float lux, long timeMillis) {
+
+        if(!hasSample) {
+            hasSample = true;
+            heldLux = lux;
+            smoothedLux = lux;
+            lastSampleTime = timeMillis;
+            level = getLevel(lux);
+            return true;
+        }
+
+        // The previous sample lasted until this one, which is held from now on
+        boolean isLevelChanged = advanceTo(timeMillis);
+        heldLux = lux;
+        return isLevelChanged;
+    }
+
+    /** Smooths in the held sample up to a time in milliseconds, and returns whether the light level changed */
+    public boolean advanceTo(long timeMillis) {
+        if(!hasSample) {
+            return false;
+        }
+
+        // Samples that are older than the previous one are not smoothed in until time has passed
+        long elapsedTime = Math.max(timeMillis - lastSampleTime, 0);
+        float smoothing = 1f - (float) Math.exp(-elapsedTime / SMOOTHING_TIME_CONSTANT);
+        smoothedLux += (heldLux - smoothedLux) * smoothing;
+        lastSampleTime = Math.max(timeMillis, lastSampleTime);
+
+        int previousLevel = level;
+        level = getLevel(smoothedLux, level);
+        return level != previousLevel;
+    }
+
+    /** Returns whether the held sample will still change the light level, once it has been smoothed in */
+    public boolean isSettling() {
+        return hasSample && getLevel(heldLux, level) != level;
+    }
+
+    /** Forgets all samples, so that the next sample is used as is */
+    public void reset() {
+        hasSample = false;
+    }
+
+    /**
+     * Returns the brightness filter intensity [0, 100] for the current light level, given the
+     * intensity that the user has chosen for the dark. The brighter it is, the less we dim.
+     */
+    public int getBrightnessFilterIntensity(int brightnessFilterIntensity) {
+        if(!hasSample) {
+            return brightnessFilterIntensity;
+        }
+
+        return brightnessFilterIntensity + (100 - brightnessFilterIntensity) * level / LEVEL_MAX;
+    }
+
+    public float getSmoothedLux() {
+        return smoothedLux;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /** Returns the light level of the lux, which has to cross a threshold by a margin to leave the level */
+    private static int getLevel(float lux, int level) {
+
+        while(level < LEVEL_MAX && lux > LEVEL_THRESHOLDS[level] * (1f + HYSTERESIS)) {
+            level++;
+        }
+
+        while(level > 0 && lux < LEVEL_THRESHOLDS[level - 1] * (1f - HYSTERESIS)) {
+            level--;
+        }
+
+        return level;
+    }
+
+    private static int getLevel(float lux) {
+        int level = 0;
+
+        while(level < LEVEL_MAX && lux >= LEVEL_THRESHOLDS[level]) {
+            level++;
+        }
+
+        return level;
+    }
+}
@@ -0,0 +1,22 @@
+package co.adrianblan.lightly.ambient;
+
+/**
+ * A source of ambient light samples, such as the light sensor of the device.
+ */
+public interface AmbientLightSource {
+
+    interface Listener {
+
+        /** Called with a sample of the ambient light in lux, at a time in milliseconds */
+        void onAmbientLight(float lux, long timeMillis);
+    }
+
+    /** Starts delivering samples to the listener, returns false if there is no such source */
+    boolean start(Listener listener);
+
+    /** Stops delivering samples */
+    void stop();
+
+    /** Returns the current time in milliseconds, on the same clock as the samples */
+    long getTimeMillis();
+}
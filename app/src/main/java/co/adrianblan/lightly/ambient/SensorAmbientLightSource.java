@@ -0,0 +1,74 @@
+package co.adrianblan.lightly.ambient;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.SystemClock;
+
+/**
+ * Delivers samples from the light sensor of the device.
+ *
+ * On KitKat and later the samples are batched in the sensor hub, and delivered at most every
+ * MAX_REPORT_LATENCY, so that the CPU is rarely woken up just to read the light.
+ */
+public class SensorAmbientLightSource implements AmbientLightSource, SensorEventListener {
+
+    private static final int SAMPLING_PERIOD_US = 1000 * 1000;
+    private static final int MAX_REPORT_LATENCY_US = 30 * 1000 * 1000;
+
+    private final SensorManager sensorManager;
+    private final Sensor lightSensor;
+    private Listener listener;
+
+    public SensorAmbientLightSource(Context context) {
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        lightSensor = sensorManager != null ? sensorManager.getDefaultSensor(Sensor.TYPE_LIGHT) : null;
+    }
+
+    @Override
+    public boolean start(Listener listener) {
+        if(lightSensor == null) {
+            System.err.println("No light sensor, the brightness will not adapt");
+            return false;
+        }
+
+        this.listener = listener;
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return sensorManager.registerListener(this, lightSensor, SAMPLING_PERIOD_US, MAX_REPORT_LATENCY_US);
+        } else {
+            return sensorManager.registerListener(this, lightSensor, SensorManager.SENSOR_DELAY_NORMAL);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if(lightSensor != null) {
+            sensorManager.unregisterListener(this);
+        }
+
+        listener = null;
+    }
+
+    @Override
+    public long getTimeMillis() {
+
+        // The timestamps of the events count from boot, including deep sleep
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        if(listener != null) {
+
+            // The timestamps of batched events are when they were sensed, in nanoseconds
+            listener.onAmbientLight(event.values[0], event.timestamp / 1000000);
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+}
@@ -12,6 +12,12 @@ import org.parceler.Parcel;
 @Parcel
 public class LocationData {
 
+    /** The name of locations that we do not know the name of */
+    public static final String UNKNOWN = "Unknown";
+
+    // Mean radius of the earth, used for the distance between locations
+    private static final double EARTH_RADIUS_KILOMETERS = 6371.0;
+
     private String regionName; // Region name is roughly the largest nearby city
     private String country;
 
@@ -20,6 +26,8 @@ public class LocationData {
     @SerializedName("lon")
     private double longitude;
 
+    private long time; // When the position was resolved, in milliseconds since the epoch
+
     public LocationData() { /*Required empty bean constructor*/ }
 
     public LocationData (String regionName, String country, double latitude, double longitude) {
@@ -29,12 +37,21 @@ public class LocationData {
         this.longitude = longitude;
     }
 
+    /** Creates a copy of a location */
+    public LocationData (LocationData locationData) {
+        this.regionName = locationData.regionName;
+        this.country = locationData.country;
+        this.latitude = locationData.latitude;
+        this.longitude = locationData.longitude;
+        this.time = locationData.time;
+    }
+
     /** Returns a LocationData object that is mocked to central Stockholm */
     public static LocationData getDummyLocationData() {
         LocationData dummyLocationData = new LocationData();
 
-        dummyLocationData.setRegionName("Unknown");
-        dummyLocationData.setCountry("Unknown");
+        dummyLocationData.setRegionName(UNKNOWN);
+        dummyLocationData.setCountry(UNKNOWN);
         dummyLocationData.setLatitude(59.32);
         dummyLocationData.setLongitude(18.07);
 
@@ -42,13 +59,30 @@ public class LocationData {
     }
 
     public String getHumanizedLocation() {
-        if(regionName.equals("Unknown") && country.equals("Unknown")) {
+        if(!hasName()) {
             return "Unknown location";
         } else {
             return regionName + ", " + country;
         }
     }
 
+    /** Returns whether we know the name of the location */
+    public boolean hasName() {
+        return !(regionName.equals(UNKNOWN) && country.equals(UNKNOWN));
+    }
+
+    /** Returns the great circle distance to another location, in kilometers */
+    public double getDistanceTo(LocationData other) {
+        double latitudeDifference = Math.toRadians(other.latitude - latitude);
+        double longitudeDifference = Math.toRadians(other.longitude - longitude);
+
+        double a = Math.sin(latitudeDifference / 2) * Math.sin(latitudeDifference / 2)
+                + Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(other.latitude))
+                * Math.sin(longitudeDifference / 2) * Math.sin(longitudeDifference / 2);
+
+        return 2 * EARTH_RADIUS_KILOMETERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
     /** Returns whether all the member variables in the object are not empty */
     public boolean isValid() {
         return (!regionName.isEmpty() && !country.isEmpty());
@@ -85,4 +119,12 @@ public class LocationData {
     public void setLongitude(double longitude) {
         this.longitude = longitude;
     }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
 }
@@ -0,0 +1,365 @@
+package co.adrianblan.lightly.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import co.adrianblan.lightly.helpers.Tracer;
+import co.adrianblan.lightly.location.BundledSunCycleSource;
+import co.adrianblan.lightly.location.LocationSource;
+import co.adrianblan.lightly.location.PlatformLocationSource;
+import co.adrianblan.lightly.location.ReverseGeocoder;
+import co.adrianblan.lightly.location.StoredLocationSource;
+import co.adrianblan.lightly.network.DataRequestHandler;
+import co.adrianblan.lightly.network.LocationDataJsonCodec;
+import co.adrianblan.lightly.network.SunriseSunsetDataJsonCodec;
+import co.adrianblan.lightly.refresh.RefreshScheduler;
+import co.adrianblan.lightly.suncycle.SunCycle;
+import retrofit.Call;
+import retrofit.Response;
+
+/**
+ * Owns the location and sunrise and sunset data, and the sun cycle that is built from them.
+ *
+ * All fetching, parsing, sun cycle construction and persistence is done on a background thread.
+ * The results are published as immutable SunCycleSnapshots to the listener on the main thread.
+ *
+ * The location is resolved through a chain of LocationSources, where the first one with a fresh
+ * location wins. The last known location of the platform and the stored location are both read
+ * locally in milliseconds, so the IP lookup of ip-api.com is only the last resort. When the user
+ * asks for a new location the stored one is skipped, since it is what they want to replace.
+ * Locations without a name are named offline by the ReverseGeocoder.
+ *
+ * Until any data has been fetched, the sun cycle is estimated from the bundled twilights of the
+ * nearest city, so that even the first launch shows the sun cycle of the right region.
+ */
+public class SunCycleRepository {
+
+    /** Receives snapshots and refresh results on the main thread */
+    public interface Listener {
+
+        /** Called whenever a new snapshot is available */
+        void onSnapshot(SunCycleSnapshot snapshot);
+
+        /** Called when a refresh of the data has finished, successful or not */
+        void onRefreshFinished(boolean isSuccessful);
+    }
+
+    // Locations closer than this to the previous location are given its name
+    private static final double NEARBY_DISTANCE_KILOMETERS = 50.0;
+
+    private final SharedPreferences sharedPreferences;
+    private final DataRequestHandler dataRequestHandler;
+    private final LocationDataJsonCodec locationDataJsonCodec;
+    private final SunriseSunsetDataJsonCodec sunriseSunsetDataJsonCodec;
+    private final LocationSource[] locationSources;
+    private final ReverseGeocoder reverseGeocoder;
+    private final BundledSunCycleSource bundledSunCycleSource;
+    private final RefreshScheduler refreshScheduler;
+
+    private final ExecutorService executorService;
+    private final Handler mainHandler;
+
+    private volatile Listener listener;
+    private volatile Call<?> currentCall;
+    private volatile boolean isClosed;
+
+    // Only accessed from the background thread
+    private SunCycleSnapshot snapshot;
+
+    public SunCycleRepository(Context context, Listener listener) {
+        this.sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+        this.dataRequestHandler = new DataRequestHandler();
+        this.locationDataJsonCodec = new LocationDataJsonCodec();
+        this.sunriseSunsetDataJsonCodec = new SunriseSunsetDataJsonCodec();
+        this.locationSources = new LocationSource[] {
+                new PlatformLocationSource(context),
+                new StoredLocationSource(sharedPreferences, locationDataJsonCodec),
+                new IpLocationSource()
+        };
+        this.reverseGeocoder = new ReverseGeocoder(context);
+        this.bundledSunCycleSource = new BundledSunCycleSource(context);
+        this.refreshScheduler = new RefreshScheduler(context);
+        this.executorService = Executors.newSingleThreadExecutor();
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.listener = listener;
+    }
+
+    /** Loads the stored data, or dummy data if there is none, and publishes it */
+    public void load() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                snapshot = loadSnapshot();
+                publishSnapshot(snapshot);
+            }
+        });
+    }
+
+    /** Requests new location and sunrise and sunset data, and publishes and stores the results */
+    public void refresh() {
+        refresh(false);
+    }
+
+    /** Like refresh(), but never reuses the stored location, since the user has asked for a new one */
+    public void refreshLocation() {
+        refresh(true);
+    }
+
+    private void refresh(final boolean isStoredLocationSkipped) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                publishRefreshFinished(refreshSnapshot(isStoredLocationSkipped));
+            }
+        });
+    }
+
+    /** Cancels all work in flight, and stops publishing to the listener */
+    public void close() {
+        isClosed = true;
+        listener = null;
+
+        Call<?> call = currentCall;
+        if(call != null) {
+            call.cancel();
+        }
+
+        executorService.shutdownNow();
+    }
+
+    private void execute(Runnable runnable) {
+        if(!isClosed) {
+            executorService.execute(runnable);
+        }
+    }
+
+    /** Restores the stored data. Otherwise populates with dummy data */
+    private SunCycleSnapshot loadSnapshot() {
+        boolean hasDummyData = sharedPreferences.getBoolean("hasDummyData", true);
+        LocationData locationData = null;
+        SunriseSunsetData sunriseSunsetData = null;
+
+        if(!hasDummyData) {
+            try {
+                locationData = locationDataJsonCodec.fromJson(sharedPreferences.getString("locationData", null));
+                sunriseSunsetData = sunriseSunsetDataJsonCodec.fromJson(sharedPreferences.getString("sunriseSunsetData", null));
+            } catch (IOException e) {
+                System.err.println("Error: Unable to restore stored data, using dummy data");
+                e.printStackTrace();
+                hasDummyData = true;
+            }
+        }
+
+        if(hasDummyData) {
+            SunCycleSnapshot bundledSnapshot = bundledSunCycleSource.getSnapshot(System.currentTimeMillis(),
+                    TimeZone.getDefault(), getLocalLocationData());
+
+            if(bundledSnapshot != null) {
+                return bundledSnapshot;
+            }
+
+            return getDummySnapshot();
+        }
+
+        try {
+            return new SunCycleSnapshot(locationData, sunriseSunsetData,
+                    new SunCycle(new Date(), sunriseSunsetData), false);
+        } catch (ParseException e) {
+            System.err.println("Error parsing stored sunrise and sunset data in SunCycle");
+            e.printStackTrace();
+            return getDummySnapshot();
+        }
+    }
+
+    /** Returns a snapshot of dummy data, with a sun cycle in local time */
+    private static SunCycleSnapshot getDummySnapshot() {
+        return new SunCycleSnapshot(LocationData.getDummyLocationData(), SunriseSunsetData.getDummySunriseSunsetData(),
+                SunCycle.getDummySunCycle(new Date()), true);
+    }
+
+    /**
+     * Requests the LocationData of the user, and on success also the SunriseSunsetData for it.
+     * Publishes a snapshot for each step that succeeds, and returns whether both succeeded.
+     */
+    private boolean refreshSnapshot(boolean isStoredLocationSkipped) {
+        if(snapshot == null) {
+            snapshot = loadSnapshot();
+        }
+
+        LocationData locationData = resolveLocationData(isStoredLocationSkipped);
+
+        // Check that our data was successfully fetched
+        if(locationData == null) {
+            System.err.println("Error: Failed to get location data");
+            return false;
+        }
+
+        snapshot = new SunCycleSnapshot(locationData, snapshot.getSunriseSunsetData(),
+                snapshot.getSunCycle(), snapshot.hasDummyData());
+        publishSnapshot(snapshot);
+
+        // As the request for location was successful, we now request for sun cycle data
+        SunriseSunsetDataWrapper sunriseSunsetDataWrapper = execute(dataRequestHandler.getSunriseSunsetDataCall(
+                Double.toString(locationData.getLatitude()), Double.toString(locationData.getLongitude())));
+
+        if(sunriseSunsetDataWrapper == null || sunriseSunsetDataWrapper.getResults() == null
+                || !sunriseSunsetDataWrapper.getResults().isValid()) {
+            System.err.println("Error: Failed to get sunrise and sunset data");
+            return false;
+        }
+
+        SunriseSunsetData sunriseSunsetData = sunriseSunsetDataWrapper.getResults();
+
+        try {
+            // We create a SunCycle using the sunrise and sunset data
+            SunCycle sunCycle = new SunCycle(new Date(), sunriseSunsetData);
+            snapshot = new SunCycleSnapshot(locationData, sunriseSunsetData, sunCycle, false);
+        } catch (ParseException e) {
+            System.err.println("Error parsing sunrise and and sunset data in SunCycle");
+            e.printStackTrace();
+            return false;
+        }
+
+        saveSnapshot(snapshot);
+        refreshScheduler.setRefreshed();
+        publishSnapshot(snapshot);
+        return true;
+    }
+
+    /** Returns the location of the first source that has a fresh one, or null if none of them has */
+    private LocationData resolveLocationData(boolean isStoredLocationSkipped) {
+        Tracer.beginSection("SunCycleRepository.resolveLocationData");
+        try {
+            for(LocationSource locationSource : locationSources) {
+                if(isStoredLocationSkipped && locationSource instanceof StoredLocationSource) {
+                    continue;
+                }
+
+                LocationData locationData = locationSource.getLocationData();
+
+                if(locationData != null && locationData.isValid()) {
+                    return withNearbyName(reverseGeocoder.getNamedLocation(locationData), snapshot.getLocationData());
+                }
+            }
+
+            return null;
+        } finally {
+            Tracer.endSection();
+        }
+    }
+
+    /** Returns the first fresh location of the sources which do not need the network, or null if none has one */
+    private LocationData getLocalLocationData() {
+        for(LocationSource locationSource : locationSources) {
+            if(locationSource instanceof IpLocationSource) {
+                continue;
+            }
+
+            LocationData locationData = locationSource.getLocationData();
+
+            if(locationData != null && locationData.isValid()) {
+                return locationData;
+            }
+        }
+
+        return null;
+    }
+
+    /** Returns the location, with the name of the previous location if it has none and they are close */
+    private static LocationData withNearbyName(LocationData locationData, LocationData previousLocationData) {
+        if(locationData.hasName() || !previousLocationData.hasName()
+                || locationData.getDistanceTo(previousLocationData) > NEARBY_DISTANCE_KILOMETERS) {
+            return locationData;
+        }
+
+        LocationData namedLocationData = new LocationData(previousLocationData.getRegionName(),
+                previousLocationData.getCountry(), locationData.getLatitude(), locationData.getLongitude());
+        namedLocationData.setTime(locationData.getTime());
+        return namedLocationData;
+    }
+
+    /** Looks up the location from the IP address, which needs the network and is often far off */
+    private class IpLocationSource implements LocationSource {
+
+        @Override
+        public LocationData getLocationData() {
+            LocationData locationData = execute(dataRequestHandler.getLocationDataCall());
+
+            if(locationData != null) {
+                locationData.setTime(System.currentTimeMillis());
+            }
+
+            return locationData;
+        }
+    }
+
+    /** Stores the data of the snapshot */
+    private void saveSnapshot(SunCycleSnapshot snapshot) {
+        Tracer.beginSection("SunCycleRepository.saveSnapshot");
+        try {
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            editor.putBoolean("hasDummyData", snapshot.hasDummyData());
+            editor.putString("locationData", locationDataJsonCodec.toJson(snapshot.getLocationData()));
+            editor.putString("sunriseSunsetData", sunriseSunsetDataJsonCodec.toJson(snapshot.getSunriseSunsetData()));
+            editor.apply();
+        } catch (IOException e) {
+            System.err.println("Error: Unable to store location and sun cycle data");
+            e.printStackTrace();
+        } finally {
+            Tracer.endSection();
+        }
+    }
+
+    /** Executes a call on the current thread, returns the body or null if it failed */
+    private <T> T execute(Call<T> call) {
+        if(isClosed) {
+            return null;
+        }
+
+        currentCall = call;
+
+        try {
+            Response<T> response = call.execute();
+            return response.isSuccess() ? response.body() : null;
+        } catch (IOException e) {
+            System.err.println("Error: Request failed " + e.toString());
+            return null;
+        } finally {
+            currentCall = null;
+        }
+    }
+
+    private void publishSnapshot(final SunCycleSnapshot snapshot) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Listener currentListener = listener;
+                if(currentListener != null) {
+                    currentListener.onSnapshot(snapshot);
+                }
+            }
+        });
+    }
+
+    private void publishRefreshFinished(final boolean isSuccessful) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Listener currentListener = listener;
+                if(currentListener != null) {
+                    currentListener.onRefreshFinished(isSuccessful);
+                }
+            }
+        });
+    }
+}
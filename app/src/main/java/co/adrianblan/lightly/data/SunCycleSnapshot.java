@@ -0,0 +1,46 @@
+package co.adrianblan.lightly.data;
+
+import co.adrianblan.lightly.suncycle.SunCycle;
+
+/**
+ * An immutable snapshot of the location, the sunrise and sunset data and the resulting sun cycle.
+ *
+ * Snapshots are published by the SunCycleRepository and are never modified after that. The data
+ * classes are mutable, so the snapshot keeps its own copies of them and only hands out copies,
+ * which readers are free to modify, such as updating the position of the sun in the SunCycle.
+ */
+public final class SunCycleSnapshot {
+
+    private final LocationData locationData;
+    private final SunriseSunsetData sunriseSunsetData;
+    private final SunCycle sunCycle;
+    private final boolean hasDummyData;
+
+    public SunCycleSnapshot(LocationData locationData, SunriseSunsetData sunriseSunsetData,
+                            SunCycle sunCycle, boolean hasDummyData) {
+        this.locationData = new LocationData(locationData);
+        this.sunriseSunsetData = new SunriseSunsetData(sunriseSunsetData);
+        this.sunCycle = new SunCycle(sunCycle);
+        this.hasDummyData = hasDummyData;
+    }
+
+    /** Returns a copy of the location */
+    public LocationData getLocationData() {
+        return new LocationData(locationData);
+    }
+
+    /** Returns a copy of the sunrise and sunset data */
+    public SunriseSunsetData getSunriseSunsetData() {
+        return new SunriseSunsetData(sunriseSunsetData);
+    }
+
+    /** Returns a copy of the sun cycle */
+    public SunCycle getSunCycle() {
+        return new SunCycle(sunCycle);
+    }
+
+    /** Returns whether the snapshot is based on dummy data, rather than fetched data */
+    public boolean hasDummyData() {
+        return hasDummyData;
+    }
+}
@@ -26,7 +26,16 @@ public class SunriseSunsetData {
         this.civilTwilightEnd = civilTwilightEnd;
     }
 
-    /** Returns a SunriseSunsetData object that is mocked to a reasonable sunrise and sunset */
+    /** Creates a copy of sunrise and sunset data */
+    public SunriseSunsetData(SunriseSunsetData sunriseSunsetData) {
+        this.civilTwilightBegin = sunriseSunsetData.civilTwilightBegin;
+        this.civilTwilightEnd = sunriseSunsetData.civilTwilightEnd;
+    }
+
+    /**
+     * Returns a SunriseSunsetData object that is mocked to a reasonable sunrise and sunset in UTC.
+     * The dummy sun cycle is in local time, so it comes from SunCycle.getDummySunCycle instead.
+     */
     public static SunriseSunsetData getDummySunriseSunsetData() {
         SunriseSunsetData dummySunriseSunsetData = new SunriseSunsetData();
         dummySunriseSunsetData.setCivilTwilightBegin("08:00:00 AM");
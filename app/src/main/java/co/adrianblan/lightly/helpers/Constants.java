@@ -9,4 +9,10 @@ public class Constants {
     public static final int ACTIVITY_MAIN_NOTIFICATION_REQUEST_CODE = 0;
     public static final int SERVICE_OVERLAY_REQUEST_CODE = 1;
     public static final int OVERLAY_PERMISSION_REQUEST_CODE = 2;
+    public static final int WIDGET_TOGGLE_REQUEST_CODE = 3;
+    public static final int LOCATION_PERMISSION_REQUEST_CODE = 4;
+    public static final int REFRESH_ALARM_REQUEST_CODE = 5;
+
+    public static final int REFRESH_UNMETERED_JOB_ID = 1;
+    public static final int REFRESH_CHARGING_JOB_ID = 2;
 }
@@ -1,12 +1,15 @@
 package co.adrianblan.lightly.helpers;
 
+import android.Manifest;
+import android.app.Activity;
 import android.content.Context;
-import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.provider.Settings;
-import android.support.v7.app.AlertDialog;
+import android.support.v4.app.ActivityCompat;
+import android.support.v4.content.ContextCompat;
 
 /**
  * Handles checking for permissions, and requesting permissions.
@@ -48,4 +51,18 @@ public class PermissionHandler {
         return null;
     }
 
+    /** Returns whether we have the permission to read the coarse location of the platform */
+    public boolean hasCoarseLocationPermission(Context context) {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Requests the permission to read the coarse location, the result is delivered to
+     * onRequestPermissionsResult of the activity. Is granted on install before Marshmallow.
+     */
+    public void requestCoarseLocationPermission(Activity activity) {
+        ActivityCompat.requestPermissions(activity, new String[] {Manifest.permission.ACCESS_COARSE_LOCATION},
+                Constants.LOCATION_PERMISSION_REQUEST_CODE);
+    }
 }
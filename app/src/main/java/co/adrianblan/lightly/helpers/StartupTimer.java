@@ -0,0 +1,104 @@
+package co.adrianblan.lightly.helpers;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Records how long each phase of starting the main screen takes.
+ *
+ * A timer is started at the top of onCreate, and every phase is then marked once it is done. The
+ * latest startups are kept in a small ring buffer, which can be printed with
+ * adb shell dumpsys activity co.adrianblan.lightly/.MainActivity
+ */
+public class StartupTimer {
+
+    private static final int MAX_STARTUPS = 8;
+    private static final int MAX_PHASES = 16;
+
+    private static final StartupTimer[] recentStartups = new StartupTimer[MAX_STARTUPS];
+    private static int startupCount;
+
+    private final int startupNumber;
+    private final boolean isColdStart;
+    private final long processStartMillis; // Time from the process start to the timer start, or -1
+    private final long startTime;
+
+    private final String[] phaseNames = new String[MAX_PHASES];
+    private final long[] phaseEndTimes = new long[MAX_PHASES];
+    private int phaseCount;
+
+    private StartupTimer(int startupNumber) {
+        this.startupNumber = startupNumber;
+        this.isColdStart = startupNumber == 0;
+        this.startTime = System.nanoTime();
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            processStartMillis = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+        } else {
+            processStartMillis = -1;
+        }
+    }
+
+    /** Starts timing a startup, and adds it to the latest startups */
+    public static synchronized StartupTimer start() {
+        StartupTimer startupTimer = new StartupTimer(startupCount);
+        recentStartups[startupCount % MAX_STARTUPS] = startupTimer;
+        startupCount++;
+        return startupTimer;
+    }
+
+    /** Marks that a phase is done. Every phase is only recorded the first time it is marked */
+    public synchronized void mark(String phaseName) {
+        long endTime = System.nanoTime();
+
+        if(phaseCount >= MAX_PHASES) {
+            return;
+        }
+
+        for(int i = 0; i < phaseCount; i++) {
+            if(phaseNames[i].equals(phaseName)) {
+                return;
+            }
+        }
+
+        phaseNames[phaseCount] = phaseName;
+        phaseEndTimes[phaseCount] = endTime;
+        phaseCount++;
+    }
+
+    /** Prints the latest startups, oldest first, with the duration of every phase */
+    public static synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Startups:");
+
+        for(int i = Math.max(0, startupCount - MAX_STARTUPS); i < startupCount; i++) {
+            recentStartups[i % MAX_STARTUPS].dumpPhases(prefix + "  ", writer);
+        }
+    }
+
+    private synchronized void dumpPhases(String prefix, PrintWriter writer) {
+        writer.print(prefix + "#" + startupNumber + (isColdStart ? " cold" : " warm"));
+
+        if(processStartMillis >= 0) {
+            writer.print(", " + processStartMillis + " ms after process start");
+        }
+
+        writer.println();
+
+        long previousEndTime = startTime;
+
+        for(int i = 0; i < phaseCount; i++) {
+            writer.println(prefix + "  " + String.format(Locale.US, "%-20s %8.2f ms %8.2f ms total",
+                    phaseNames[i], getMillis(phaseEndTimes[i] - previousEndTime),
+                    getMillis(phaseEndTimes[i] - startTime)));
+            previousEndTime = phaseEndTimes[i];
+        }
+    }
+
+    private static double getMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+}
@@ -0,0 +1,44 @@
+package co.adrianblan.lightly.helpers;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+import co.adrianblan.lightly.BuildConfig;
+
+/**
+ * Adds named sections to systrace and Perfetto captures, so that they show where the time goes.
+ *
+ * Sections are only emitted in builds where BuildConfig.TRACING_ENABLED is set, otherwise the
+ * calls are compiled out. Every beginSection() must be followed by an endSection() on the same
+ * thread, preferably in a finally block.
+ */
+public class Tracer {
+
+    private static final boolean IS_SUPPORTED =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    /** Begins a section, with a constant name so that nothing is allocated */
+    public static void beginSection(String sectionName) {
+        if(BuildConfig.TRACING_ENABLED && IS_SUPPORTED) {
+            beginTraceSection(sectionName);
+        }
+    }
+
+    /** Ends the latest section that was begun on this thread */
+    public static void endSection() {
+        if(BuildConfig.TRACING_ENABLED && IS_SUPPORTED) {
+            endTraceSection();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginTraceSection(String sectionName) {
+        Trace.beginSection(sectionName);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endTraceSection() {
+        Trace.endSection();
+    }
+}
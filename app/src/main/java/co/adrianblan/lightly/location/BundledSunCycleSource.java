@@ -0,0 +1,158 @@
+package co.adrianblan.lightly.location;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import java.io.IOException;
+import java.text.Normalizer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import co.adrianblan.lightly.data.LocationData;
+import co.adrianblan.lightly.data.SunCycleSnapshot;
+import co.adrianblan.lightly.data.SunriseSunsetData;
+import co.adrianblan.lightly.helpers.Tracer;
+import co.adrianblan.lightly.suncycle.SunCycle;
+import co.adrianblan.lightly.suncycle.TwilightTable;
+
+/**
+ * Gives the sun cycle of the nearest city from the bundled twilights of the cities, without any
+ * network, for the first launch before any data has been fetched.
+ *
+ * The city is the nearest one to a known location. Without a location it is the city that names
+ * the time zone, such as Stockholm for Europe/Stockholm, which at least puts the user in the right
+ * region. The twilights and the CityIndex are both memory mapped on first use.
+ */
+public class BundledSunCycleSource {
+
+    private final AssetManager assetManager;
+    private CityIndex cityIndex;
+    private TwilightTable twilightTable;
+    private boolean hasLoaded;
+
+    public BundledSunCycleSource(Context context) {
+        this.assetManager = context.getApplicationContext().getAssets();
+    }
+
+    /**
+     * Returns a snapshot with the sun cycle of the day for the city nearest to the location, or
+     * for the city of the time zone if the location is null. The snapshot is marked as dummy data,
+     * since it is only an estimate until the data is refreshed. Returns null if there is no city.
+     */
+    public SunCycleSnapshot getSnapshot(long currentTimeMillis, TimeZone timeZone, LocationData locationData) {
+        Tracer.beginSection("BundledSunCycleSource.getSnapshot");
+        try {
+            if(!load()) {
+                return null;
+            }
+
+            int city;
+
+            if(locationData != null) {
+                city = cityIndex.findNearest(locationData.getLatitude(), locationData.getLongitude());
+            } else {
+                city = findTimeZoneCity(timeZone.getID());
+            }
+
+            if(city < 0) {
+                return null;
+            }
+
+            // The table starts at the mean solar midnight of the UTC day with the same date as the local day
+            Calendar calendar = Calendar.getInstance(timeZone, Locale.US);
+            calendar.setTimeInMillis(currentTimeMillis);
+            int day = Math.min(calendar.get(Calendar.DAY_OF_YEAR) - 1, twilightTable.getDayCount() - 1);
+
+            Calendar utcCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+            utcCalendar.clear();
+            utcCalendar.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH));
+            long meanMidnightMillis = TwilightTable.getMeanMidnightMillis(utcCalendar.getTimeInMillis(),
+                    twilightTable.getLongitude(city));
+
+            int twilight = twilightTable.getTwilight(city, day);
+            int beginMinutes = TwilightTable.getBeginMinutes(twilight);
+            int endMinutes = TwilightTable.getEndMinutes(twilight);
+
+            // In the same format as api.sunrise-sunset.org, so that the sun cycle is built as for fetched data
+            SimpleDateFormat simpleDateFormat = new SimpleDateFormat("hh:mm:ss aa", Locale.US);
+            simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            SunriseSunsetData sunriseSunsetData = new SunriseSunsetData(
+                    simpleDateFormat.format(new Date(meanMidnightMillis + beginMinutes * 60 * 1000L)),
+                    simpleDateFormat.format(new Date(meanMidnightMillis + endMinutes * 60 * 1000L)));
+
+            SunCycle sunCycle;
+
+            if(beginMinutes == 0 && endMinutes == TwilightTable.MINUTES_PER_DAY) {
+
+                // The times of a day without a night are a whole day apart, which the format can not tell
+                sunCycle = new SunCycle(new Date(currentTimeMillis), 0f, 1f);
+            } else {
+                sunCycle = new SunCycle(new Date(currentTimeMillis), sunriseSunsetData);
+            }
+
+            LocationData cityLocationData = new LocationData(cityIndex.getName(city), cityIndex.getCountry(city),
+                    cityIndex.getLatitude(city), cityIndex.getLongitude(city));
+
+            return new SunCycleSnapshot(cityLocationData, sunriseSunsetData, sunCycle, true);
+        } catch (ParseException e) {
+            System.err.println("Error parsing bundled sunrise and sunset data in SunCycle");
+            e.printStackTrace();
+            return null;
+        } finally {
+            Tracer.endSection();
+        }
+    }
+
+    /**
+     * Returns the city named by the last part of a time zone ID, or -1 if there is none. Decodes
+     * every name of the index, which is fine for the single lookup of a first launch.
+     */
+    private int findTimeZoneCity(String timeZoneId) {
+        String timeZoneCity = normalize(timeZoneId.substring(timeZoneId.lastIndexOf('/') + 1).replace('_', ' '));
+
+        for(int city = 0; city < cityIndex.size(); city++) {
+            String name = normalize(cityIndex.getName(city));
+
+            // Also matches names with a suffix, such as Ho Chi Minh City for Asia/Ho_Chi_Minh
+            if(name.equals(timeZoneCity) || name.startsWith(timeZoneCity + " ")) {
+                return city;
+            }
+        }
+
+        return -1;
+    }
+
+    /** Returns a name in lower case without accents, since the time zone IDs are plain ASCII */
+    private static String normalize(String name) {
+        return Normalizer.normalize(name, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase(Locale.US);
+    }
+
+    /** Maps the index and the twilights on first use, and returns whether both could be mapped */
+    private synchronized boolean load() {
+        if(!hasLoaded) {
+            hasLoaded = true;
+
+            try {
+                CityIndex mappedCityIndex = new CityIndex(MappedAssets.map(assetManager, CityIndex.ASSET_NAME));
+                TwilightTable mappedTwilightTable = new TwilightTable(
+                        MappedAssets.map(assetManager, CityIndex.TWILIGHT_ASSET_NAME));
+
+                if(mappedCityIndex.size() != mappedTwilightTable.size()) {
+                    throw new IOException("The twilights do not match the city index");
+                }
+
+                cityIndex = mappedCityIndex;
+                twilightTable = mappedTwilightTable;
+            } catch (IOException e) {
+                System.err.println("Error: Unable to map the bundled twilights");
+                e.printStackTrace();
+            }
+        }
+
+        return cityIndex != null;
+    }
+}
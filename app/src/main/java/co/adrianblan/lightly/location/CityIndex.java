@@ -0,0 +1,193 @@
+package co.adrianblan.lightly.location;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the bundled index of cities, which is generated at build time by CityIndexGenerator.
+ *
+ * The index is read straight from its buffer, which is usually memory mapped, so the only heap it
+ * uses is this object. All values are big endian, and the layout is
+ *
+ *   header     magic, version, city count, country count, offset of the strings (5 ints)
+ *   cities     latitude and longitude in hundredths of a degree (2 shorts), country (short),
+ *              offset of the name (int)
+ *   countries  offset of the name (int)
+ *   strings    length in bytes (unsigned short) followed by UTF-8
+ *
+ * The cities are laid out as an implicit k-d tree. The city in the middle of a range splits it,
+ * on latitude at even depths and on longitude at odd depths, and the halves before and after it
+ * are the subtrees. Nearest city queries therefore only visit a few cities, and do not allocate.
+ */
+public final class CityIndex {
+
+    /** The name of the index in the assets, which must not be compressed so that it can be mapped */
+    public static final String ASSET_NAME = "cities.idx";
+
+    /** The name of the TwilightTable of the cities in the assets, which has the cities in the same order */
+    public static final String TWILIGHT_ASSET_NAME = "cities.twl";
+
+    public static final int MAGIC = 0x4C435459; // "LCTY"
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 5 * 4;
+    public static final int CITY_SIZE = 2 + 2 + 2 + 4;
+    public static final int COUNTRY_SIZE = 4;
+
+    /** The coordinates are stored as shorts in units of one over this, about a kilometer */
+    public static final int COORDINATE_SCALE = 100;
+
+    private final ByteBuffer buffer;
+    private final int cityCount;
+    private final int countryCount;
+    private final int countriesOffset;
+    private final int stringsOffset;
+
+    // State of the current query, which is why queries are synchronized
+    private float queryLatitude;
+    private float queryLongitude;
+    private float queryLongitudeScale;
+    private int nearestCity;
+    private float nearestDistance;
+
+    /** Creates an index which reads from the buffer, which must hold the whole index */
+    public CityIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a city index");
+        }
+
+        if(buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported city index version " + buffer.getInt(4));
+        }
+
+        cityCount = buffer.getInt(8);
+        countryCount = buffer.getInt(12);
+        countriesOffset = HEADER_SIZE + cityCount * CITY_SIZE;
+        stringsOffset = buffer.getInt(16);
+
+        if(stringsOffset != countriesOffset + countryCount * COUNTRY_SIZE || stringsOffset > buffer.capacity()) {
+            throw new IOException("Corrupt city index");
+        }
+    }
+
+    public int size() {
+        return cityCount;
+    }
+
+    /** Returns the city which is nearest to the position, or -1 if there are no cities */
+    public synchronized int findNearest(double latitude, double longitude) {
+        queryLatitude = (float) latitude;
+        queryLongitude = (float) longitude;
+        queryLongitudeScale = (float) Math.cos(Math.toRadians(latitude));
+        nearestCity = -1;
+        nearestDistance = Float.MAX_VALUE;
+
+        search(0, cityCount, 0);
+        return nearestCity;
+    }
+
+    /** Searches the subtree of the cities in [start, end), where depth decides the axis of the split */
+    private void search(int start, int end, int depth) {
+        if(start >= end) {
+            return;
+        }
+
+        int middle = (start + end) >>> 1;
+        float latitude = getLatitude(middle);
+        float longitude = getLongitude(middle);
+
+        float latitudeDifference = latitude - queryLatitude;
+        float longitudeDifference = wrapLongitude(longitude - queryLongitude) * queryLongitudeScale;
+        float distance = latitudeDifference * latitudeDifference + longitudeDifference * longitudeDifference;
+
+        if(distance < nearestDistance) {
+            nearestDistance = distance;
+            nearestCity = middle;
+        }
+
+        // Search the side of the query first, and the other side only if it might be nearer
+        float splitDistance;
+        boolean isQueryBefore;
+
+        if(depth % 2 == 0) {
+            isQueryBefore = queryLatitude < latitude;
+            splitDistance = Math.abs(latitude - queryLatitude);
+        } else {
+            isQueryBefore = queryLongitude < longitude;
+            splitDistance = getLongitudeSplitDistance(longitude) * queryLongitudeScale;
+        }
+
+        if(isQueryBefore) {
+            search(start, middle, depth + 1);
+        } else {
+            search(middle + 1, end, depth + 1);
+        }
+
+        if(splitDistance * splitDistance < nearestDistance) {
+            if(isQueryBefore) {
+                search(middle + 1, end, depth + 1);
+            } else {
+                search(start, middle, depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest longitude difference between the query and any city on the other side
+     * of the split, where the other side might be near across the antimeridian.
+     */
+    private float getLongitudeSplitDistance(float splitLongitude) {
+        if(queryLongitude < splitLongitude) {
+            return Math.min(splitLongitude - queryLongitude, 180f + queryLongitude);
+        } else {
+            return Math.min(queryLongitude - splitLongitude, 180f - queryLongitude);
+        }
+    }
+
+    /** Wraps a difference of longitudes into [-180, 180] */
+    private static float wrapLongitude(float longitudeDifference) {
+        if(longitudeDifference > 180f) {
+            return longitudeDifference - 360f;
+        } else if(longitudeDifference < -180f) {
+            return longitudeDifference + 360f;
+        }
+
+        return longitudeDifference;
+    }
+
+    public float getLatitude(int city) {
+        return buffer.getShort(HEADER_SIZE + city * CITY_SIZE) / (float) COORDINATE_SCALE;
+    }
+
+    public float getLongitude(int city) {
+        return buffer.getShort(HEADER_SIZE + city * CITY_SIZE + 2) / (float) COORDINATE_SCALE;
+    }
+
+    public String getName(int city) {
+        return getString(buffer.getInt(HEADER_SIZE + city * CITY_SIZE + 6));
+    }
+
+    public String getCountry(int city) {
+        int country = buffer.getShort(HEADER_SIZE + city * CITY_SIZE + 4);
+        return getString(buffer.getInt(countriesOffset + country * COUNTRY_SIZE));
+    }
+
+    /** Decodes the string at an offset into the strings */
+    private String getString(int offset) {
+        int position = stringsOffset + offset;
+        byte[] bytes = new byte[buffer.getShort(position) & 0xFFFF];
+
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package co.adrianblan.lightly.location;
+
+import co.adrianblan.lightly.data.LocationData;
+
+/**
+ * A source of the location of the user, such as the platform or a stored previous location.
+ */
+public interface LocationSource {
+
+    /** Returns the location if the source has one that is fresh enough, otherwise null */
+    LocationData getLocationData();
+}
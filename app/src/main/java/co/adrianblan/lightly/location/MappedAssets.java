@@ -0,0 +1,32 @@
+package co.adrianblan.lightly.location;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Maps assets into memory. The assets must be stored uncompressed in the APK, so that the mapping
+ * reads them in place and pages them in on demand.
+ */
+final class MappedAssets {
+
+    private MappedAssets() {}
+
+    /** Maps an asset read only. The mapping stays valid after the file is closed */
+    static ByteBuffer map(AssetManager assetManager, String assetName) throws IOException {
+        AssetFileDescriptor assetFileDescriptor = assetManager.openFd(assetName);
+        FileInputStream inputStream = assetFileDescriptor.createInputStream();
+
+        try {
+            return inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    assetFileDescriptor.getStartOffset(), assetFileDescriptor.getDeclaredLength());
+        } finally {
+            inputStream.close();
+            assetFileDescriptor.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package co.adrianblan.lightly.location;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+
+import co.adrianblan.lightly.data.LocationData;
+import co.adrianblan.lightly.helpers.PermissionHandler;
+
+/**
+ * Returns the last known location of the platform, which is cached by the system and needs
+ * neither the network nor a new fix. Only coarse locations are used, since the sun cycle barely
+ * changes within a few kilometers.
+ *
+ * The platform has no name for the location, so it is returned as unknown.
+ */
+public class PlatformLocationSource implements LocationSource {
+
+    // The passive provider has the fixes of all other apps, the network provider only its own
+    private static final String[] PROVIDERS = {LocationManager.PASSIVE_PROVIDER, LocationManager.NETWORK_PROVIDER};
+
+    // Older locations might be from before a trip
+    private static final long MAX_AGE_MILLIS = 12 * 60 * 60 * 1000L;
+
+    // Less accurate locations are no better than the lookup from the IP address
+    private static final float MAX_ACCURACY_METERS = 50 * 1000f;
+
+    private final Context context;
+    private final PermissionHandler permissionHandler;
+
+    public PlatformLocationSource(Context context) {
+        this.context = context.getApplicationContext();
+        this.permissionHandler = new PermissionHandler();
+    }
+
+    @Override
+    public LocationData getLocationData() {
+        if(!permissionHandler.hasCoarseLocationPermission(context)) {
+            return null;
+        }
+
+        LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        Location newestLocation = null;
+
+        for(String provider : PROVIDERS) {
+            Location location = getLastKnownLocation(locationManager, provider);
+
+            if(location != null && (newestLocation == null || location.getTime() > newestLocation.getTime())) {
+                newestLocation = location;
+            }
+        }
+
+        if(newestLocation == null || System.currentTimeMillis() - newestLocation.getTime() > MAX_AGE_MILLIS
+                || (newestLocation.hasAccuracy() && newestLocation.getAccuracy() > MAX_ACCURACY_METERS)) {
+            return null;
+        }
+
+        LocationData locationData = new LocationData(LocationData.UNKNOWN, LocationData.UNKNOWN,
+                newestLocation.getLatitude(), newestLocation.getLongitude());
+        locationData.setTime(newestLocation.getTime());
+        return locationData;
+    }
+
+    /** Returns the last known location of a provider, or null if there is none or we may not read it */
+    private static Location getLastKnownLocation(LocationManager locationManager, String provider) {
+        try {
+            return locationManager.getLastKnownLocation(provider);
+        } catch (SecurityException | IllegalArgumentException e) {
+
+            // Before Jelly Bean MR1 the passive provider requires the fine location permission
+            System.err.println("Error: Unable to read the last known location of " + provider);
+            return null;
+        }
+    }
+}
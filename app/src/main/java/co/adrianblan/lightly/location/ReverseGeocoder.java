@@ -0,0 +1,85 @@
+package co.adrianblan.lightly.location;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import java.io.IOException;
+
+import co.adrianblan.lightly.data.LocationData;
+import co.adrianblan.lightly.helpers.Tracer;
+
+/**
+ * Names locations after the nearest city in the bundled CityIndex, without any network.
+ *
+ * The index is memory mapped from the assets the first time it is needed. It is stored
+ * uncompressed in the APK, so the mapping reads it in place and pages it in on demand.
+ */
+public class ReverseGeocoder {
+
+    // Locations further than this from any city are left unnamed, rather than named after a far city
+    private static final double MAX_DISTANCE_KILOMETERS = 100.0;
+
+    private final AssetManager assetManager;
+    private CityIndex cityIndex;
+    private boolean hasLoaded;
+
+    public ReverseGeocoder(Context context) {
+        this.assetManager = context.getApplicationContext().getAssets();
+    }
+
+    /**
+     * Returns the location named after the nearest city. Locations which already have a name, or
+     * which are not near any city, are returned as they are.
+     */
+    public LocationData getNamedLocation(LocationData locationData) {
+        if(locationData.hasName()) {
+            return locationData;
+        }
+
+        CityIndex cityIndex = getCityIndex();
+
+        if(cityIndex == null) {
+            return locationData;
+        }
+
+        Tracer.beginSection("ReverseGeocoder.findNearest");
+        try {
+            int city = cityIndex.findNearest(locationData.getLatitude(), locationData.getLongitude());
+
+            if(city < 0) {
+                return locationData;
+            }
+
+            LocationData cityLocationData = new LocationData(cityIndex.getName(city), cityIndex.getCountry(city),
+                    cityIndex.getLatitude(city), cityIndex.getLongitude(city));
+
+            if(locationData.getDistanceTo(cityLocationData) > MAX_DISTANCE_KILOMETERS) {
+                return locationData;
+            }
+
+            // Only the name is taken from the city, the position stays as it was
+            LocationData namedLocationData = new LocationData(cityLocationData.getRegionName(),
+                    cityLocationData.getCountry(), locationData.getLatitude(), locationData.getLongitude());
+            namedLocationData.setTime(locationData.getTime());
+            return namedLocationData;
+        } finally {
+            Tracer.endSection();
+        }
+    }
+
+    /** Returns the city index, which is mapped on first use. Returns null if it could not be mapped */
+    private synchronized CityIndex getCityIndex() {
+        if(!hasLoaded) {
+            hasLoaded = true;
+
+            try {
+                cityIndex = new CityIndex(MappedAssets.map(assetManager, CityIndex.ASSET_NAME));
+            } catch (IOException e) {
+                System.err.println("Error: Unable to map the city index");
+                e.printStackTrace();
+            }
+        }
+
+        return cityIndex;
+    }
+}
@@ -0,0 +1,49 @@
+package co.adrianblan.lightly.location;
+
+import android.content.SharedPreferences;
+
+import java.io.IOException;
+
+import co.adrianblan.lightly.data.LocationData;
+import co.adrianblan.lightly.network.LocationDataJsonCodec;
+
+/**
+ * Returns the location that was stored with the latest snapshot, as long as it is recent.
+ */
+public class StoredLocationSource implements LocationSource {
+
+    // The user is unlikely to have moved far within a day
+    private static final long MAX_AGE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final SharedPreferences sharedPreferences;
+    private final LocationDataJsonCodec locationDataJsonCodec;
+
+    public StoredLocationSource(SharedPreferences sharedPreferences, LocationDataJsonCodec locationDataJsonCodec) {
+        this.sharedPreferences = sharedPreferences;
+        this.locationDataJsonCodec = locationDataJsonCodec;
+    }
+
+    @Override
+    public LocationData getLocationData() {
+        if(sharedPreferences.getBoolean("hasDummyData", true)) {
+            return null;
+        }
+
+        LocationData locationData;
+
+        try {
+            locationData = locationDataJsonCodec.fromJson(sharedPreferences.getString("locationData", null));
+        } catch (IOException e) {
+            System.err.println("Error: Unable to restore stored location data");
+            e.printStackTrace();
+            return null;
+        }
+
+        // Locations that were stored before they had a time are never fresh
+        if(locationData == null || System.currentTimeMillis() - locationData.getTime() > MAX_AGE_MILLIS) {
+            return null;
+        }
+
+        return locationData;
+    }
+}
@@ -6,7 +6,6 @@ import co.adrianblan.lightly.helpers.Constants;
 import co.adrianblan.lightly.data.LocationData;
 import co.adrianblan.lightly.data.SunriseSunsetDataWrapper;
 import retrofit.Call;
-import retrofit.GsonConverterFactory;
 import retrofit.Retrofit;
 
 /**
@@ -14,14 +13,30 @@ import retrofit.Retrofit;
  */
 public class DataRequestHandler {
 
-    private static OkHttpClient okHttpClient = new OkHttpClient();
+    private static NetworkMetrics networkMetrics = new NetworkMetrics();
+    private static OkHttpClient okHttpClient = createOkHttpClient();
+    private static JsonCodecConverterFactory jsonCodecConverterFactory = JsonCodecConverterFactory.create();
+
+    /** Returns the metrics of all requests made through the shared client */
+    public static NetworkMetrics getNetworkMetrics() {
+        return networkMetrics;
+    }
+
+    /** Creates the shared client, which records the metrics of every request */
+    private static OkHttpClient createOkHttpClient() {
+        OkHttpClient client = new OkHttpClient();
+        NetworkMetricsInterceptor networkMetricsInterceptor = new NetworkMetricsInterceptor(networkMetrics);
+        client.interceptors().add(networkMetricsInterceptor);
+        client.networkInterceptors().add(networkMetricsInterceptor.getNetworkInterceptor());
+        return client;
+    }
 
     /** Returns a Call for LocationData requested from ip-api.com using Retrofit */
     public Call<LocationData> getLocationDataCall() {
 
         Retrofit retrofit = new Retrofit.Builder()
                 .baseUrl(Constants.LOCATION_DATA_URL)
-                .addConverterFactory(GsonConverterFactory.create())
+                .addConverterFactory(jsonCodecConverterFactory)
                 .client(okHttpClient)
                 .build();
 
@@ -34,7 +49,7 @@ public class DataRequestHandler {
 
         Retrofit retrofit = new Retrofit.Builder()
                 .baseUrl(Constants.SUNRISE_SUNSET_DATA_URL)
-                .addConverterFactory(GsonConverterFactory.create())
+                .addConverterFactory(jsonCodecConverterFactory)
                 .client(okHttpClient)
                 .build();
 
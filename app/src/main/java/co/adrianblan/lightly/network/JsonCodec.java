@@ -0,0 +1,63 @@
+package co.adrianblan.lightly.network;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import co.adrianblan.lightly.helpers.Tracer;
+
+/**
+ * A hand-written, streaming JSON codec for a single type.
+ *
+ * Codecs read only the fields that we use and skip everything else, without reflection and without
+ * building a tree of the document.
+ */
+public abstract class JsonCodec<T> {
+
+    /** Reads an object from the reader, which is positioned at the start of the object */
+    public abstract T read(JsonReader reader) throws IOException;
+
+    /** Writes an object to the writer */
+    public abstract void write(JsonWriter writer, T value) throws IOException;
+
+    /** Parses an object from a JSON string */
+    public T fromJson(String json) throws IOException {
+        if(json == null) {
+            throw new IOException("No JSON to parse");
+        }
+
+        Tracer.beginSection("JsonCodec.fromJson");
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            return read(reader);
+        } finally {
+            reader.close();
+            Tracer.endSection();
+        }
+    }
+
+    /** Serializes an object to a JSON string */
+    public String toJson(T value) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        JsonWriter writer = new JsonWriter(stringWriter);
+        try {
+            write(writer, value);
+        } finally {
+            writer.close();
+        }
+        return stringWriter.toString();
+    }
+
+    /** Reads a string value, or returns an empty string if the value is null */
+    protected static String nextStringOrEmpty(JsonReader reader) throws IOException {
+        if(reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return "";
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,65 @@
+package co.adrianblan.lightly.network;
+
+import android.util.JsonReader;
+
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+
+import co.adrianblan.lightly.data.LocationData;
+import co.adrianblan.lightly.data.SunriseSunsetDataWrapper;
+import co.adrianblan.lightly.helpers.Tracer;
+import retrofit.Converter;
+
+/**
+ * A Retrofit converter factory which decodes responses with our hand-written JsonCodecs.
+ */
+public class JsonCodecConverterFactory extends Converter.Factory {
+
+    private final Map<Type, JsonCodec<?>> jsonCodecs = new HashMap<>();
+
+    /** Returns a factory with the codecs for all the types that our APIs respond with */
+    public static JsonCodecConverterFactory create() {
+        JsonCodecConverterFactory factory = new JsonCodecConverterFactory();
+        factory.jsonCodecs.put(LocationData.class, new LocationDataJsonCodec());
+        factory.jsonCodecs.put(SunriseSunsetDataWrapper.class, new SunriseSunsetDataWrapperJsonCodec());
+        return factory;
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> fromResponseBody(Type type, Annotation[] annotations) {
+        JsonCodec<?> jsonCodec = jsonCodecs.get(type);
+
+        if(jsonCodec == null) {
+            return null;
+        }
+
+        return new JsonCodecConverter<>(jsonCodec);
+    }
+
+    /** Converts a response body by streaming it through a JsonCodec */
+    private static class JsonCodecConverter<T> implements Converter<ResponseBody, T> {
+
+        private final JsonCodec<T> jsonCodec;
+
+        JsonCodecConverter(JsonCodec<T> jsonCodec) {
+            this.jsonCodec = jsonCodec;
+        }
+
+        @Override
+        public T convert(ResponseBody value) throws IOException {
+            Tracer.beginSection("JsonCodecConverter.convert");
+            JsonReader reader = new JsonReader(value.charStream());
+            try {
+                return jsonCodec.read(reader);
+            } finally {
+                reader.close();
+                Tracer.endSection();
+            }
+        }
+    }
+}
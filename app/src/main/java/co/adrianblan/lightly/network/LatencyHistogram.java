@@ -0,0 +1,76 @@
+package co.adrianblan.lightly.network;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * A histogram of latencies in fixed buckets, which records without allocating.
+ *
+ * The buckets grow roughly exponentially, since a slow mobile network is interesting in steps of
+ * hundreds of milliseconds while a fast one is in steps of tens. Percentiles are estimated as the
+ * upper bound of the bucket that they fall in.
+ */
+public class LatencyHistogram {
+
+    // Upper bounds of the buckets in milliseconds, the last bucket has no upper bound
+    private static final long[] BUCKET_BOUNDS_MILLIS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final long[] bucketCounts = new long[BUCKET_BOUNDS_MILLIS.length + 1];
+    private long count;
+    private long sumMillis;
+    private long maxMillis;
+
+    /** Records a latency in milliseconds */
+    public synchronized void record(long millis) {
+        int bucket = 0;
+
+        while(bucket < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+
+        bucketCounts[bucket]++;
+        count++;
+        sumMillis += millis;
+        maxMillis = Math.max(maxMillis, millis);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMaxMillis() {
+        return maxMillis;
+    }
+
+    /** Returns the upper bound of the bucket of a percentile [0, 1], or the largest latency for the last bucket */
+    public synchronized long getPercentileMillis(double percentile) {
+        if(count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+
+        for(int bucket = 0; bucket < BUCKET_BOUNDS_MILLIS.length; bucket++) {
+            seen += bucketCounts[bucket];
+
+            if(seen >= rank) {
+                return Math.min(BUCKET_BOUNDS_MILLIS[bucket], maxMillis);
+            }
+        }
+
+        return maxMillis;
+    }
+
+    /** Prints the count, mean, percentiles and the largest latency on one line */
+    public synchronized void dump(String prefix, String name, PrintWriter writer) {
+        if(count == 0) {
+            writer.println(prefix + name + ": none");
+            return;
+        }
+
+        writer.println(prefix + String.format(Locale.US, "%-8s n=%d mean=%d ms p50<=%d ms p90<=%d ms p99<=%d ms max=%d ms",
+                name + ":", count, sumMillis / count, getPercentileMillis(0.50), getPercentileMillis(0.90),
+                getPercentileMillis(0.99), maxMillis));
+    }
+}
@@ -0,0 +1,57 @@
+package co.adrianblan.lightly.network;
+
+import android.util.JsonReader;
+import android.util.JsonWriter;
+
+import java.io.IOException;
+
+import co.adrianblan.lightly.data.LocationData;
+
+/**
+ * Reads and writes LocationData in the format of ip-api.com, which is also used for persistence.
+ * The time is not part of the format of ip-api.com, and is only present in stored data.
+ */
+public class LocationDataJsonCodec extends JsonCodec<LocationData> {
+
+    @Override
+    public LocationData read(JsonReader reader) throws IOException {
+        LocationData locationData = new LocationData("", "", 0.0, 0.0);
+
+        reader.beginObject();
+        while(reader.hasNext()) {
+            switch(reader.nextName()) {
+                case "regionName":
+                    locationData.setRegionName(nextStringOrEmpty(reader));
+                    break;
+                case "country":
+                    locationData.setCountry(nextStringOrEmpty(reader));
+                    break;
+                case "lat":
+                    locationData.setLatitude(reader.nextDouble());
+                    break;
+                case "lon":
+                    locationData.setLongitude(reader.nextDouble());
+                    break;
+                case "time":
+                    locationData.setTime(reader.nextLong());
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return locationData;
+    }
+
+    @Override
+    public void write(JsonWriter writer, LocationData locationData) throws IOException {
+        writer.beginObject();
+        writer.name("regionName").value(locationData.getRegionName());
+        writer.name("country").value(locationData.getCountry());
+        writer.name("lat").value(locationData.getLatitude());
+        writer.name("lon").value(locationData.getLongitude());
+        writer.name("time").value(locationData.getTime());
+        writer.endObject();
+    }
+}
@@ -0,0 +1,124 @@
+package co.adrianblan.lightly.network;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the latencies, sizes and results of the requests to each endpoint, together with how
+ * often the user is asked to retry a failed refresh.
+ *
+ * The metrics are only kept in memory for the life of the process, and can be printed with
+ * adb shell dumpsys activity co.adrianblan.lightly/.MainActivity
+ */
+public class NetworkMetrics {
+
+    /** The metrics of the requests to one endpoint */
+    public static class Endpoint {
+
+        // Time until a connection is ready, which includes the DNS lookup. Near zero for pooled connections
+        private final LatencyHistogram connectLatency = new LatencyHistogram();
+
+        // Time until the headers of the response have been received
+        private final LatencyHistogram firstByteLatency = new LatencyHistogram();
+
+        // Time until the body of the response has been read, or the request has failed
+        private final LatencyHistogram totalLatency = new LatencyHistogram();
+
+        private final Map<Integer, Integer> statusCodeCounts = new TreeMap<>();
+        private int failureCount;
+        private int cacheHitCount;
+        private long bytesReceived;
+
+        public LatencyHistogram getConnectLatency() {
+            return connectLatency;
+        }
+
+        public LatencyHistogram getFirstByteLatency() {
+            return firstByteLatency;
+        }
+
+        public LatencyHistogram getTotalLatency() {
+            return totalLatency;
+        }
+
+        /** Returns the number of responses with a status code */
+        public synchronized int getStatusCodeCount(int statusCode) {
+            Integer statusCodeCount = statusCodeCounts.get(statusCode);
+            return statusCodeCount != null ? statusCodeCount : 0;
+        }
+
+        /** Returns the number of requests which failed without a response */
+        public synchronized int getFailureCount() {
+            return failureCount;
+        }
+
+        public synchronized int getCacheHitCount() {
+            return cacheHitCount;
+        }
+
+        public synchronized long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        synchronized void recordResponse(int statusCode, boolean isCacheHit) {
+            Integer statusCodeCount = statusCodeCounts.get(statusCode);
+            statusCodeCounts.put(statusCode, statusCodeCount != null ? statusCodeCount + 1 : 1);
+
+            if(isCacheHit) {
+                cacheHitCount++;
+            }
+        }
+
+        synchronized void recordFailure() {
+            failureCount++;
+        }
+
+        synchronized void recordBytes(long bytes) {
+            bytesReceived += bytes;
+        }
+
+        private synchronized void dump(String prefix, PrintWriter writer) {
+            writer.println(prefix + "status " + statusCodeCounts + ", failures " + failureCount
+                    + ", cache hits " + cacheHitCount + ", " + bytesReceived + " bytes received");
+            connectLatency.dump(prefix, "connect", writer);
+            firstByteLatency.dump(prefix, "ttfb", writer);
+            totalLatency.dump(prefix, "total", writer);
+        }
+    }
+
+    private final Map<String, Endpoint> endpoints = new TreeMap<>();
+    private int retryPromptCount;
+
+    /** Returns the metrics of an endpoint, such as "ip-api.com/json", creating them if needed */
+    public synchronized Endpoint getEndpoint(String name) {
+        Endpoint endpoint = endpoints.get(name);
+
+        if(endpoint == null) {
+            endpoint = new Endpoint();
+            endpoints.put(name, endpoint);
+        }
+
+        return endpoint;
+    }
+
+    /** Records that the user was asked whether to retry a failed refresh */
+    public synchronized void recordRetryPrompt() {
+        retryPromptCount++;
+    }
+
+    public synchronized int getRetryPromptCount() {
+        return retryPromptCount;
+    }
+
+    /** Prints the metrics of every endpoint */
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Network:");
+        writer.println(prefix + "  retry prompts " + retryPromptCount);
+
+        for(Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            writer.println(prefix + "  " + entry.getKey());
+            entry.getValue().dump(prefix + "    ", writer);
+        }
+    }
+}
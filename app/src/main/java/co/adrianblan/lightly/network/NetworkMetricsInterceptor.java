@@ -0,0 +1,178 @@
+package co.adrianblan.lightly.network;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.net.URL;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Records the metrics of every request of an OkHttpClient into NetworkMetrics.
+ *
+ * This is the application interceptor, which sees the whole call. Its network interceptor has to be
+ * added as well, since only that one runs once the connection is ready and can time the connection
+ * and the first byte. The two find each other through a thread local, as OkHttp runs the whole
+ * chain of a call on one thread. The total time and the size are recorded once the body is read.
+ */
+public class NetworkMetricsInterceptor implements Interceptor {
+
+    /** The times of the call that is running on a thread, in nanoseconds */
+    private static class CallTiming {
+        long startTime;
+        long networkStartTime;
+        long headersTime;
+    }
+
+    private final NetworkMetrics networkMetrics;
+    private final ThreadLocal<CallTiming> callTiming = new ThreadLocal<>();
+
+    private final Interceptor networkInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            CallTiming timing = callTiming.get();
+            long networkStartTime = System.nanoTime();
+
+            Response response = chain.proceed(chain.request());
+
+            // After a redirect these are the times of the last request
+            if(timing != null) {
+                timing.networkStartTime = networkStartTime;
+                timing.headersTime = System.nanoTime();
+            }
+
+            return response;
+        }
+    };
+
+    public NetworkMetricsInterceptor(NetworkMetrics networkMetrics) {
+        this.networkMetrics = networkMetrics;
+    }
+
+    /** Returns the interceptor to add to the network interceptors of the same client */
+    public Interceptor getNetworkInterceptor() {
+        return networkInterceptor;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        NetworkMetrics.Endpoint endpoint = networkMetrics.getEndpoint(getEndpointName(request.url()));
+
+        CallTiming timing = new CallTiming();
+        timing.startTime = System.nanoTime();
+        callTiming.set(timing);
+
+        Response response;
+
+        try {
+            response = chain.proceed(request);
+        } catch(IOException e) {
+            endpoint.recordFailure();
+            endpoint.getTotalLatency().record(getMillisSince(timing.startTime));
+            throw e;
+        } finally {
+            callTiming.remove();
+        }
+
+        // Responses from the cache never reach the network interceptor
+        if(timing.networkStartTime != 0) {
+            endpoint.getConnectLatency().record(getMillis(timing.networkStartTime - timing.startTime));
+            endpoint.getFirstByteLatency().record(getMillis(timing.headersTime - timing.startTime));
+        }
+
+        endpoint.recordResponse(response.code(), response.cacheResponse() != null && response.networkResponse() == null);
+
+        ResponseBody body = response.body();
+
+        if(body == null) {
+            endpoint.getTotalLatency().record(getMillisSince(timing.startTime));
+            return response;
+        }
+
+        return response.newBuilder()
+                .body(new MeteredResponseBody(body, endpoint, timing.startTime))
+                .build();
+    }
+
+    /** Returns the host and path of a URL, so that the requests to the same API share their metrics */
+    static String getEndpointName(URL url) {
+        return url.getHost() + url.getPath();
+    }
+
+    private static long getMillisSince(long startTime) {
+        return getMillis(System.nanoTime() - startTime);
+    }
+
+    private static long getMillis(long nanos) {
+        return nanos / 1000000;
+    }
+
+    /** A response body which records its size and the total time once it has been read or closed */
+    private static class MeteredResponseBody extends ResponseBody {
+
+        private final MediaType contentType;
+        private final long contentLength;
+        private final BufferedSource source;
+
+        MeteredResponseBody(ResponseBody body, final NetworkMetrics.Endpoint endpoint, final long startTime)
+                throws IOException {
+            this.contentType = body.contentType();
+            this.contentLength = body.contentLength();
+            this.source = Okio.buffer(new ForwardingSource(body.source()) {
+
+                private long bytesRead;
+                private boolean isRecorded;
+
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+
+                    if(read == -1) {
+                        record();
+                    } else {
+                        bytesRead += read;
+                    }
+
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    record();
+                    super.close();
+                }
+
+                private void record() {
+                    if(!isRecorded) {
+                        isRecorded = true;
+                        endpoint.recordBytes(bytesRead);
+                        endpoint.getTotalLatency().record(getMillisSince(startTime));
+                    }
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package co.adrianblan.lightly.network;
+
+import android.util.JsonReader;
+import android.util.JsonWriter;
+
+import java.io.IOException;
+
+import co.adrianblan.lightly.data.SunriseSunsetData;
+
+/**
+ * Reads and writes SunriseSunsetData in the format of api.sunrise-sunset.org, which is also used
+ * for persistence.
+ */
+public class SunriseSunsetDataJsonCodec extends JsonCodec<SunriseSunsetData> {
+
+    @Override
+    public SunriseSunsetData read(JsonReader reader) throws IOException {
+        SunriseSunsetData sunriseSunsetData = new SunriseSunsetData("", "");
+
+        reader.beginObject();
+        while(reader.hasNext()) {
+            switch(reader.nextName()) {
+                case "civil_twilight_begin":
+                    sunriseSunsetData.setCivilTwilightBegin(nextStringOrEmpty(reader));
+                    break;
+                case "civil_twilight_end":
+                    sunriseSunsetData.setCivilTwilightEnd(nextStringOrEmpty(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return sunriseSunsetData;
+    }
+
+    @Override
+    public void write(JsonWriter writer, SunriseSunsetData sunriseSunsetData) throws IOException {
+        writer.beginObject();
+        writer.name("civil_twilight_begin").value(sunriseSunsetData.getCivilTwilightBegin());
+        writer.name("civil_twilight_end").value(sunriseSunsetData.getCivilTwilightEnd());
+        writer.endObject();
+    }
+}
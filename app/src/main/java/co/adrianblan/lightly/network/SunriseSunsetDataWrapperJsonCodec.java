@@ -0,0 +1,41 @@
+package co.adrianblan.lightly.network;
+
+import android.util.JsonReader;
+import android.util.JsonWriter;
+
+import java.io.IOException;
+
+import co.adrianblan.lightly.data.SunriseSunsetDataWrapper;
+
+/**
+ * Reads and writes the response of api.sunrise-sunset.org, which wraps the SunriseSunsetData.
+ */
+public class SunriseSunsetDataWrapperJsonCodec extends JsonCodec<SunriseSunsetDataWrapper> {
+
+    private final SunriseSunsetDataJsonCodec sunriseSunsetDataJsonCodec = new SunriseSunsetDataJsonCodec();
+
+    @Override
+    public SunriseSunsetDataWrapper read(JsonReader reader) throws IOException {
+        SunriseSunsetDataWrapper sunriseSunsetDataWrapper = new SunriseSunsetDataWrapper();
+
+        reader.beginObject();
+        while(reader.hasNext()) {
+            if("results".equals(reader.nextName())) {
+                sunriseSunsetDataWrapper.setResults(sunriseSunsetDataJsonCodec.read(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return sunriseSunsetDataWrapper;
+    }
+
+    @Override
+    public void write(JsonWriter writer, SunriseSunsetDataWrapper sunriseSunsetDataWrapper) throws IOException {
+        writer.beginObject();
+        writer.name("results");
+        sunriseSunsetDataJsonCodec.write(writer, sunriseSunsetDataWrapper.getResults());
+        writer.endObject();
+    }
+}
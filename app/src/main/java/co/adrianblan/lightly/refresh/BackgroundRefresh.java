@@ -0,0 +1,74 @@
+package co.adrianblan.lightly.refresh;
+
+import android.content.Context;
+
+import co.adrianblan.lightly.data.SunCycleRepository;
+import co.adrianblan.lightly.data.SunCycleSnapshot;
+import co.adrianblan.lightly.helpers.PermissionHandler;
+import co.adrianblan.lightly.service.OverlayService;
+import co.adrianblan.lightly.service.OverlayStateHandler;
+import co.adrianblan.lightly.service.OverlayUpdateSequence;
+
+/**
+ * A single refresh of the data in the background, which also sends the new sun cycle to the
+ * overlay if it is active. Used by both RefreshJobService and RefreshReceiver.
+ */
+public class BackgroundRefresh implements SunCycleRepository.Listener {
+
+    /** Called on the main thread once the refresh has finished, successful or not */
+    public interface Callback {
+        void onRefreshFinished(boolean isSuccessful);
+    }
+
+    private final Context context;
+    private final Callback callback;
+    private SunCycleRepository sunCycleRepository;
+    private SunCycleSnapshot snapshot;
+
+    public BackgroundRefresh(Context context, Callback callback) {
+        this.context = context.getApplicationContext();
+        this.callback = callback;
+    }
+
+    /** Starts the refresh, the work is done on the background thread of the repository */
+    public void start() {
+        sunCycleRepository = new SunCycleRepository(context, this);
+        sunCycleRepository.refresh();
+    }
+
+    /** Cancels the refresh, after which the callback is never called */
+    public void cancel() {
+        if(sunCycleRepository != null) {
+            sunCycleRepository.close();
+        }
+    }
+
+    @Override
+    public void onSnapshot(SunCycleSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public void onRefreshFinished(boolean isSuccessful) {
+        sunCycleRepository.close();
+
+        if(isSuccessful) {
+            updateOverlay();
+        }
+
+        callback.onRefreshFinished(isSuccessful);
+    }
+
+    /** Sends the new sun cycle to the overlay, with the settings that it already has */
+    private void updateOverlay() {
+        OverlayStateHandler.State state = new OverlayStateHandler(context).getState();
+
+        if(snapshot != null && state.isActive() && state.hasSunCycle()
+                && new PermissionHandler().hasDrawOverlayPermission(context)) {
+
+            context.startService(OverlayUpdateSequence.tag(OverlayService.createSunCycleIntent(context,
+                    snapshot.getSunCycle(), snapshot.getLocationData(), state.getColorSettings(),
+                    state.isAdaptiveBrightness())));
+        }
+    }
+}
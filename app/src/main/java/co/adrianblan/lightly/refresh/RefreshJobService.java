@@ -0,0 +1,53 @@
+package co.adrianblan.lightly.refresh;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+import android.util.SparseArray;
+
+/**
+ * Runs the scheduled background refresh on Lollipop and later.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class RefreshJobService extends JobService {
+
+    // The refreshes in flight, by the id of their job
+    private final SparseArray<BackgroundRefresh> backgroundRefreshes = new SparseArray<>();
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+
+        // Both jobs run on the same period, so the one that runs second usually has nothing to do
+        if(!new RefreshScheduler(this).isRefreshDue()) {
+            return false;
+        }
+
+        BackgroundRefresh backgroundRefresh = new BackgroundRefresh(this, new BackgroundRefresh.Callback() {
+            @Override
+            public void onRefreshFinished(boolean isSuccessful) {
+                backgroundRefreshes.remove(params.getJobId());
+
+                // A failed refresh is retried with the backoff of the job
+                jobFinished(params, !isSuccessful);
+            }
+        });
+
+        backgroundRefreshes.put(params.getJobId(), backgroundRefresh);
+        backgroundRefresh.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        BackgroundRefresh backgroundRefresh = backgroundRefreshes.get(params.getJobId());
+
+        if(backgroundRefresh != null) {
+            backgroundRefresh.cancel();
+            backgroundRefreshes.remove(params.getJobId());
+        }
+
+        // The conditions of the job no longer hold, so we try again once they do
+        return true;
+    }
+}
@@ -0,0 +1,33 @@
+package co.adrianblan.lightly.refresh;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Runs the background refresh from the alarm, before Lollipop where there is no JobScheduler.
+ *
+ * The alarm has no conditions of its own, so the refresh is skipped unless we are on an unmetered
+ * network or charging.
+ */
+public class RefreshReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        RefreshScheduler refreshScheduler = new RefreshScheduler(context);
+
+        if(!refreshScheduler.isRefreshDue() || !refreshScheduler.isConnectedCheaply()) {
+            return;
+        }
+
+        // Keeps the receiver alive until the refresh has finished on the background thread
+        final PendingResult pendingResult = goAsync();
+
+        new BackgroundRefresh(context, new BackgroundRefresh.Callback() {
+            @Override
+            public void onRefreshFinished(boolean isSuccessful) {
+                pendingResult.finish();
+            }
+        }).start();
+    }
+}
@@ -0,0 +1,137 @@
+package co.adrianblan.lightly.refresh;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.preference.PreferenceManager;
+
+import co.adrianblan.lightly.helpers.Constants;
+
+/**
+ * Schedules the refresh of the location and sunrise and sunset data in the background, so that
+ * the main screen always starts with fresh stored data instead of fetching it.
+ *
+ * On Lollipop and later the refresh is a periodic job, which the system batches with the work of
+ * other apps. One job runs on unmetered networks, and another while the device is idle and
+ * charging. Earlier versions use an inexact alarm that does not wake the device, and check the
+ * same conditions themselves. Whichever runs first does the refresh, the others skip it until
+ * MIN_REFRESH_INTERVAL_MILLIS has passed.
+ */
+public class RefreshScheduler {
+
+    // How often the jobs and the alarm run
+    private static final long REFRESH_PERIOD_MILLIS = 6 * 60 * 60 * 1000L;
+
+    // Refreshes closer than this to the latest one are skipped, the sun cycle barely changes in a few hours
+    private static final long MIN_REFRESH_INTERVAL_MILLIS = 4 * 60 * 60 * 1000L;
+
+    private static final String KEY_LAST_REFRESH_TIME = "lastRefreshTime";
+
+    private final Context context;
+
+    public RefreshScheduler(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /** Schedules the background refresh, unless it already is scheduled */
+    public void schedule() {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJobs();
+        } else {
+            scheduleAlarm();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void scheduleJobs() {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        ComponentName jobService = new ComponentName(context, RefreshJobService.class);
+
+        // Scheduling a job again would restart its period, so existing jobs are left alone
+        boolean hasUnmeteredJob = false;
+        boolean hasChargingJob = false;
+
+        for(JobInfo jobInfo : jobScheduler.getAllPendingJobs()) {
+            hasUnmeteredJob |= jobInfo.getId() == Constants.REFRESH_UNMETERED_JOB_ID;
+            hasChargingJob |= jobInfo.getId() == Constants.REFRESH_CHARGING_JOB_ID;
+        }
+
+        if(!hasUnmeteredJob) {
+            jobScheduler.schedule(new JobInfo.Builder(Constants.REFRESH_UNMETERED_JOB_ID, jobService)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .setPeriodic(REFRESH_PERIOD_MILLIS)
+                    .setPersisted(true)
+                    .build());
+        }
+
+        if(!hasChargingJob) {
+            jobScheduler.schedule(new JobInfo.Builder(Constants.REFRESH_CHARGING_JOB_ID, jobService)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                    .setRequiresCharging(true)
+                    .setRequiresDeviceIdle(true)
+                    .setPeriodic(REFRESH_PERIOD_MILLIS)
+                    .setPersisted(true)
+                    .build());
+        }
+    }
+
+    private void scheduleAlarm() {
+        Intent refreshIntent = new Intent(context, RefreshReceiver.class);
+
+        // The alarm does not survive a reboot, so the boot receiver schedules it again
+        if(PendingIntent.getBroadcast(context, Constants.REFRESH_ALARM_REQUEST_CODE, refreshIntent,
+                PendingIntent.FLAG_NO_CREATE) != null) {
+            return;
+        }
+
+        PendingIntent pendingRefreshIntent = PendingIntent.getBroadcast(context,
+                Constants.REFRESH_ALARM_REQUEST_CODE, refreshIntent, 0);
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME, REFRESH_PERIOD_MILLIS,
+                REFRESH_PERIOD_MILLIS, pendingRefreshIntent);
+    }
+
+    /** Returns whether enough time has passed since the latest refresh for another one */
+    public boolean isRefreshDue() {
+        long lastRefreshTime = PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(KEY_LAST_REFRESH_TIME, 0);
+        return Math.abs(System.currentTimeMillis() - lastRefreshTime) >= MIN_REFRESH_INTERVAL_MILLIS;
+    }
+
+    /** Records that the data was just refreshed, by the background refresh or by the user */
+    public void setRefreshed() {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putLong(KEY_LAST_REFRESH_TIME, System.currentTimeMillis()).apply();
+    }
+
+    /** Returns whether we are on an unmetered network, or on any network while charging */
+    public boolean isConnectedCheaply() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+
+        if(networkInfo == null || !networkInfo.isConnected()) {
+            return false;
+        }
+
+        return !connectivityManager.isActiveNetworkMetered() || isCharging();
+    }
+
+    private boolean isCharging() {
+
+        // The battery broadcast is sticky, so this only reads the latest one
+        Intent batteryIntent = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return batteryIntent != null && batteryIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+}
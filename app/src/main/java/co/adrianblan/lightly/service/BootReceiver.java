@@ -0,0 +1,35 @@
+package co.adrianblan.lightly.service;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import co.adrianblan.lightly.helpers.PermissionHandler;
+import co.adrianblan.lightly.refresh.RefreshScheduler;
+
+/**
+ * Restores the overlay after the device has booted, or after the app has been updated.
+ *
+ * The overlay is restored straight from the state stored by OverlayService, so that the screen is
+ * tinted without starting the main screen or requesting any data. The alarm of the background
+ * refresh does not survive a reboot either, so it is scheduled again.
+ */
+public class BootReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+
+        new RefreshScheduler(context).schedule();
+
+        OverlayStateHandler.State state = new OverlayStateHandler(context).getState();
+
+        // Only restore the overlay if it was running before, and if we still are allowed to draw it
+        if(state.isActive() && state.hasSunCycle()
+                && new PermissionHandler().hasDrawOverlayPermission(context)) {
+
+            Intent restoreIntent = new Intent(context, OverlayService.class);
+            restoreIntent.setAction(OverlayService.ACTION_RESTORE);
+            context.startService(OverlayUpdateSequence.tag(restoreIntent));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package co.adrianblan.lightly.service;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.View;
+
+/**
+ * Fades the background color of the overlay from the color that is shown to a target color.
+ *
+ * The frames are posted at a capped rate instead of on every vsync, since the overlay covers the
+ * whole screen and a fade of a few seconds looks the same at a lower rate. Frames that would not
+ * change the color are skipped, and nothing is posted once the target color has been reached.
+ * Each frame only changes the color of the background, so the view records a single color fill
+ * and the rest of the frame is drawn by the render thread when the window is hardware accelerated.
+ */
+class OverlayColorTransition implements Runnable {
+
+    // The highest rate at which the color of the overlay is changed
+    static final int MAX_FRAMES_PER_SECOND = 30;
+
+    private static final long FRAME_INTERVAL_MILLIS = 1000 / MAX_FRAMES_PER_SECOND;
+
+    private final View view;
+    private final Handler handler;
+
+    private int color;
+    private int startColor;
+    private int targetColor;
+    private long startTime;
+    private long durationMillis;
+    private boolean isRunning;
+
+    /** Creates a transition of a view whose background color is initially the given color */
+    OverlayColorTransition(View view, Handler handler, int color) {
+        this.view = view;
+        this.handler = handler;
+        this.color = color;
+        this.targetColor = color;
+    }
+
+    /** Fades to a color over a duration, starting from the color that is currently shown */
+    void animateTo(int targetColor, long durationMillis) {
+
+        if(durationMillis <= 0) {
+            snapTo(targetColor);
+            return;
+        }
+
+        if(targetColor == this.targetColor && (isRunning || targetColor == color)) {
+            return;
+        }
+
+        this.startColor = color;
+        this.targetColor = targetColor;
+        this.startTime = SystemClock.uptimeMillis();
+        this.durationMillis = durationMillis;
+
+        if(!isRunning) {
+            isRunning = true;
+            handler.post(this);
+        }
+    }
+
+    /** Shows a color at once, stopping any ongoing fade */
+    void snapTo(int targetColor) {
+        cancel();
+        this.targetColor = targetColor;
+        setColor(targetColor);
+    }
+
+    /** Jumps to the end of an ongoing fade, for when nobody can see it */
+    void finish() {
+        if(isRunning) {
+            snapTo(targetColor);
+        }
+    }
+
+    /** Stops an ongoing fade where it is */
+    void cancel() {
+        handler.removeCallbacks(this);
+        isRunning = false;
+    }
+
+    @Override
+    public void run() {
+        float fraction = Math.min((SystemClock.uptimeMillis() - startTime) / (float) durationMillis, 1f);
+
+        if(fraction >= 1f) {
+            isRunning = false;
+            setColor(targetColor);
+            return;
+        }
+
+        // Eases in and out, so that the fade does not start or stop abruptly
+        fraction = fraction * fraction * (3f - 2f * fraction);
+        setColor(interpolateColor(startColor, targetColor, fraction));
+
+        handler.postDelayed(this, FRAME_INTERVAL_MILLIS);
+    }
+
+    /** Sets the background color of the view, if it differs from the one that is shown */
+    private void setColor(int color) {
+        if(color != this.color) {
+            this.color = color;
+            view.setBackgroundColor(color);
+        }
+    }
+
+    /** Interpolates each of the channels of two ARGB colors, where a fraction of 0 is the first color */
+    static int interpolateColor(int fromColor, int toColor, float fraction) {
+        int result = 0;
+
+        for(int shift = 0; shift < 32; shift += 8) {
+            int from = (fromColor >>> shift) & 0xFF;
+            int to = (toColor >>> shift) & 0xFF;
+            result |= Math.round(from + (to - from) * fraction) << shift;
+        }
+
+        return result;
+    }
+}
@@ -1,96 +1,419 @@
 package co.adrianblan.lightly.service;
 
+import android.app.AlarmManager;
 import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.graphics.PixelFormat;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
-import android.preference.PreferenceManager;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.LinearLayout;
 
-import com.google.gson.Gson;
-
-import org.parceler.Parcels;
-
 import java.text.ParseException;
 import java.util.Date;
 import java.util.Set;
+import java.util.TimeZone;
 
-import co.adrianblan.lightly.MainActivity;
 import co.adrianblan.lightly.R;
+import co.adrianblan.lightly.data.LocationData;
+import co.adrianblan.lightly.ambient.AdaptiveBrightnessHandler;
+import co.adrianblan.lightly.ambient.AmbientLightFilter;
+import co.adrianblan.lightly.ambient.AmbientLightSource;
+import co.adrianblan.lightly.ambient.SensorAmbientLightSource;
 import co.adrianblan.lightly.data.SunriseSunsetData;
 import co.adrianblan.lightly.helpers.Constants;
+import co.adrianblan.lightly.helpers.Tracer;
+import co.adrianblan.lightly.location.LocationSource;
+import co.adrianblan.lightly.location.PlatformLocationSource;
+import co.adrianblan.lightly.suncycle.FilterSchedule;
+import co.adrianblan.lightly.suncycle.SolarCalculator;
 import co.adrianblan.lightly.suncycle.SunCycle;
-import co.adrianblan.lightly.suncycle.SunCycleColorHandler;
+import co.adrianblan.lightly.suncycle.SunCycleColorSettings;
+import co.adrianblan.lightly.suncycle.SunCycleScheduleGenerator;
+import co.adrianblan.lightly.toggle.OverlayToggleHandler;
 
 /**
  * A service which contains an overlay which dims the screen.
  *
  * The class takes intents with arguments, and there are two choices. Either put in an int "filterColor"
- * and the service will automatically use it directly. Or pass in a SunCycle and a SunCycleColorHandler
- * which will manually calculate the color. The latter is preferred when you are calling on a repeating
- * delayed schedule. However, one of these must be present.
+ * and the service will automatically use it directly. Or pass in the sunrise and sunset positions
+ * of a SunCycle together with the intensities of the SunCycleColorSettings, which will manually
+ * calculate the color. The latter is preferred when you are calling on a repeating
+ * delayed schedule. Intents with the action ACTION_UPDATE or ACTION_RESTORE need no extras, since
+ * they use the sun cycle that the service already has or has stored. Otherwise one of the
+ * extras must be present.
+ *
+ * The service also owns the repeating alarm which keeps the sun cycle color up to date. While the
+ * screen is off the alarm is cancelled and no colors are calculated, instead a single catch-up
+ * calculation is done once the screen turns back on.
+ *
+ * The service runs in its own process, so that the process which stays alive all night only holds
+ * the color calculations and the stored state. Intents with primitive extras are the only channel
+ * into the process, and OverlayStateHandler is the only channel out of it.
+ *
+ * Intents which are tagged by OverlayUpdateSequence are not applied right away. Instead only the
+ * newest preview and the newest persistent update, such as a new sun cycle, are kept and applied
+ * once all intents that are already queued have been received. The persistent update goes first,
+ * so that it is applied and stored even when a newer preview is shown over it. Anything older than
+ * the update that was last applied is dropped, so that a fast SeekBar drag never leaves a backlog
+ * of outdated colors behind.
+ *
+ * With adaptive brightness the brightness filter follows the ambient light, which is read from the
+ * light sensor while the screen is on and the overlay follows a sun cycle.
+ *
+ * The service rebuilds the sun cycle by itself when a new day begins or the time zone changes,
+ * with SolarCalculator at the last known location of the platform or the stored location. This
+ * is done at most once a day, on the first update of the day, and never needs the network.
  */
 public class OverlayService extends Service {
 
+    /** Updates the color from the sun cycle that the service already has, used by the alarm */
+    public static final String ACTION_UPDATE = "co.adrianblan.lightly.action.UPDATE_OVERLAY";
+    /** Restores the overlay from the stored sun cycle, used after a reboot */
+    public static final String ACTION_RESTORE = "co.adrianblan.lightly.action.RESTORE_OVERLAY";
+
+    public static final String EXTRA_FILTER_COLOR = "filterColor";
+    public static final String EXTRA_SUNRISE_POSITION = "sunrisePositionHorizontal";
+    public static final String EXTRA_SUNSET_POSITION = "sunsetPositionHorizontal";
+    public static final String EXTRA_COLOR_FILTER_INTENSITY = "colorFilterIntensity";
+    public static final String EXTRA_BRIGHTNESS_FILTER_INTENSITY = "brightnessFilterIntensity";
+    public static final String EXTRA_ADAPTIVE_BRIGHTNESS = "adaptiveBrightness";
+    public static final String EXTRA_LATITUDE = "latitude";
+    public static final String EXTRA_LONGITUDE = "longitude";
+
+    // How long the alarm leaves a preview alone, in case the update after it never arrives
+    private static final long PREVIEW_HOLD_MILLIS = 60 * 1000;
+
+    // Locations of the platform closer than this to the stored location are not worth a store
+    private static final double LOCATION_CHANGE_KILOMETERS = 25.0;
+
+    // How long the overlay fades to a color of the sun cycle, and to a preview while it is dragged
+    private static final long SUN_CYCLE_TRANSITION_MILLIS = 2000;
+    private static final long PREVIEW_TRANSITION_MILLIS = 150;
+
+    // How often the held ambient light is smoothed in while it settles, since the sensor only reports changes
+    private static final long AMBIENT_LIGHT_UPDATE_MILLIS = 5 * 1000;
+
     private View overlayView;
-    private int filterColorDefaultValue = Color.TRANSPARENT;
-    private int filterColor = filterColorDefaultValue;
+    private OverlayColorTransition colorTransition;
+    private int filterColor = Color.TRANSPARENT;
     private SunCycle sunCycle;
-    private SunCycleColorHandler sunCycleColorHandler;
+    private FilterSchedule filterSchedule;
+    private SunCycleColorSettings colorSettings;
     private boolean isTemporaryOverlay;
     private boolean colorIsInitialized = false;
 
+    // The location of the sun cycle, and the start of the local day that it was built for
+    private boolean hasLocation;
+    private double latitude;
+    private double longitude;
+    private long sunCycleDayStartMillis = Long.MIN_VALUE;
+    private LocationSource platformLocationSource;
+    private boolean isAdaptiveBrightness;
+    private AdaptiveBrightnessHandler adaptiveBrightnessHandler;
+
+    private final Handler handler = new Handler();
+    private boolean isApplyPosted;
+    private long appliedSequence = -1;
+    private long appliedTimestamp;
+
+    // The newest tagged updates of each kind, which wait for the queued intents to be received
+    private Intent pendingPersistentUpdate;
+    private int pendingPersistentStartId;
+    private long pendingPersistentSequence = -1;
+    private Intent pendingPreview;
+    private int pendingPreviewStartId;
+    private long pendingPreviewSequence = -1;
+
+    /** Applies the newest of the tagged updates, once all queued intents have been received */
+    private final Runnable applyPendingUpdates = new Runnable() {
+        @Override
+        public void run() {
+            Intent persistentUpdate = pendingPersistentUpdate;
+            Intent preview = pendingPreview;
+            pendingPersistentUpdate = null;
+            pendingPreview = null;
+            isApplyPosted = false;
+
+            Tracer.beginSection("OverlayService.applyPendingUpdates");
+            try {
+                // A preview which is still pending is always newer than the persistent update
+                if(persistentUpdate != null) {
+                    applyPendingUpdate(persistentUpdate, pendingPersistentSequence, pendingPersistentStartId);
+                }
+
+                if(preview != null) {
+                    applyPendingUpdate(preview, pendingPreviewSequence, pendingPreviewStartId);
+                }
+            } finally {
+                Tracer.endSection();
+            }
+        }
+    };
+
+    private OverlayStateHandler overlayStateHandler;
+    private AlarmManager alarmManager;
+    private PendingIntent pendingOverlayIntent;
+    private boolean isScreenOn = true;
+    private TimeZone timeZone;
+
+    /**
+     * Tracks whether the screen is on, so that we never do any overlay work while it is off.
+     * Also keeps the time zone up to date, so that it does not have to be fetched for every update.
+     */
+    private final BroadcastReceiver screenStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_SCREEN_OFF.equals(intent.getAction())) {
+                isScreenOn = false;
+                cancelOverlayAlarm();
+
+                // Nobody sees the rest of a fade, so we end it instead of drawing it
+                if(colorTransition != null) {
+                    colorTransition.finish();
+                }
+
+                updateAmbientLightListening();
+            } else if (Intent.ACTION_SCREEN_ON.equals(intent.getAction())) {
+                isScreenOn = true;
+                onScreenOn();
+            } else if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                timeZone = TimeZone.getDefault();
+
+                // The sun cycle is in the local time of the old time zone, so the next update rebuilds it
+                sunCycleDayStartMillis = Long.MIN_VALUE;
+            }
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        isScreenOn = isScreenInteractive();
+        timeZone = TimeZone.getDefault();
+
+        overlayStateHandler = createOverlayStateHandler();
+        platformLocationSource = new PlatformLocationSource(this);
+
+        // Only called when the light level changes, which is rare since the samples are smoothed
+        adaptiveBrightnessHandler = new AdaptiveBrightnessHandler(createAmbientLightSource(),
+                new AmbientLightFilter(), new AdaptiveBrightnessHandler.Listener() {
+            @Override
+            public void onAmbientLightLevelChanged() {
+                if(sunCycle != null && colorSettings != null && !isTemporaryOverlay && overlayView != null) {
+                    updateSunCycleColor();
+                    colorTransition.animateTo(filterColor, getColorTransitionMillis(false));
+                }
+            }
+
+            @Override
+            public void onAmbientLightSettling() {
+                handler.removeCallbacks(updateAmbientLight);
+                handler.postDelayed(updateAmbientLight, AMBIENT_LIGHT_UPDATE_MILLIS);
+            }
+        });
+
+        // The alarm only tells us to update, since we already have the sun cycle ourselves
+        Intent updateIntent = new Intent(this, OverlayService.class);
+        updateIntent.setAction(ACTION_UPDATE);
+        pendingOverlayIntent = PendingIntent.getService(this, Constants.SERVICE_OVERLAY_REQUEST_CODE,
+                updateIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        // Screen on and off can only be received by dynamically registered receivers
+        IntentFilter screenStateFilter = new IntentFilter();
+        screenStateFilter.addAction(Intent.ACTION_SCREEN_ON);
+        screenStateFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        screenStateFilter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        registerReceiver(screenStateReceiver, screenStateFilter);
+    }
+
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        Tracer.beginSection("OverlayService.onStartCommand");
+        try {
+            if(intent != null && intent.hasExtra(OverlayUpdateSequence.EXTRA_SEQUENCE)) {
+                long sequence = intent.getLongExtra(OverlayUpdateSequence.EXTRA_SEQUENCE, 0);
+                boolean isPreview = intent.hasExtra(EXTRA_FILTER_COLOR);
+
+                if(isPreview) {
+
+                    // Drop previews older than what we have applied, or are about to apply
+                    if(sequence > appliedSequence && sequence > pendingPreviewSequence
+                            && sequence > pendingPersistentSequence) {
+                        pendingPreview = intent;
+                        pendingPreviewStartId = startId;
+                        pendingPreviewSequence = sequence;
+                        postPendingUpdates();
+                    }
+                } else if(sequence > appliedSequence && sequence > pendingPersistentSequence) {
+                    pendingPersistentUpdate = intent;
+                    pendingPersistentStartId = startId;
+                    pendingPersistentSequence = sequence;
+
+                    // A preview from before this update is outdated by it
+                    if(pendingPreview != null && pendingPreviewSequence < sequence) {
+                        pendingPreview = null;
+                    }
+
+                    postPendingUpdates();
+                }
+
+                return isPreview ? START_NOT_STICKY : START_STICKY;
+            }
 
-        if(intent != null && intent.getExtras() != null) {
+            return applyIntent(intent, startId);
+        } finally {
+            Tracer.endSection();
+        }
+    }
+
+    /** Smooths in the ambient light that was last sampled, which asks for another update while it settles */
+    private final Runnable updateAmbientLight = new Runnable() {
+        @Override
+        public void run() {
+            adaptiveBrightnessHandler.update();
+        }
+    };
+
+    /** Applies the pending updates once the intents that are already queued have been received */
+    private void postPendingUpdates() {
+        if(!isApplyPosted) {
+            isApplyPosted = true;
+            handler.post(applyPendingUpdates);
+        }
+    }
+
+    /** Applies a tagged update, and remembers it as the newest applied update */
+    private void applyPendingUpdate(Intent update, long sequence, int startId) {
+        appliedSequence = sequence;
+        appliedTimestamp = update.getLongExtra(OverlayUpdateSequence.EXTRA_TIMESTAMP, SystemClock.elapsedRealtime());
+        applyIntent(update, startId);
+    }
+
+    /** Applies an intent to the overlay, and returns how the service should be restarted */
+    private int applyIntent(Intent intent, int startId) {
+
+        // A sticky restart after the process was killed has no intent, so we restore what we were following
+        if(intent == null && sunCycle == null) {
+            OverlayStateHandler.State state = overlayStateHandler.getState();
+
+            if(state.isActive() && state.hasSunCycle()) {
+                intent = new Intent(this, OverlayService.class);
+                intent.setAction(ACTION_RESTORE);
+            }
+        }
+
+        if(intent != null && ACTION_UPDATE.equals(intent.getAction()) && isTemporaryOverlay
+                && SystemClock.elapsedRealtime() - appliedTimestamp < PREVIEW_HOLD_MILLIS) {
+
+            // A late alarm must not overwrite a preview that is newer than the sun cycle
+            return START_NOT_STICKY;
+        }
+
+        if(intent != null && (ACTION_UPDATE.equals(intent.getAction())
+                || ACTION_RESTORE.equals(intent.getAction()))) {
+
+            // Alarms and restores carry no extras, so we follow the sun cycle that we already have
+            if(sunCycle == null || colorSettings == null) {
+
+                OverlayStateHandler.State state = overlayStateHandler.getState();
+
+                if(!state.hasSunCycle()) {
+                    System.err.println("No stored sun cycle to restore the overlay from");
+                    stopSelf(startId);
+                    return START_NOT_STICKY;
+                }
+
+                sunCycle = state.getSunCycle(new Date());
+                filterSchedule = new SunCycleScheduleGenerator(sunCycle).generate();
+                colorSettings = state.getColorSettings();
+                isAdaptiveBrightness = state.isAdaptiveBrightness();
+
+                // The stored sun cycle might be from an earlier day, so the next update rebuilds it
+                hasLocation = state.hasLocation();
+                latitude = state.getLatitude();
+                longitude = state.getLongitude();
+                sunCycleDayStartMillis = Long.MIN_VALUE;
+            }
+
+            isTemporaryOverlay = false;
+
+            if(ACTION_RESTORE.equals(intent.getAction())) {
+                setActive(true);
+            }
+
+            // While the screen is off nobody can see the overlay, so we postpone all work
+            if(!isScreenOn && overlayView != null) {
+                return START_STICKY;
+            }
+
+            scheduleOverlayAlarm();
+            updateSunCycleColor();
+
+        } else if(intent != null && intent.getExtras() != null) {
 
             Bundle bundle = intent.getExtras();
             Set<String> bundleKeyset = bundle.keySet();
 
-            if(bundleKeyset.contains("filterColor")) {
+            if(bundleKeyset.contains(EXTRA_FILTER_COLOR)) {
 
                 // If we get filtercolor directly, use it
-                filterColor = bundle.getInt("filterColor");
+                filterColor = bundle.getInt(EXTRA_FILTER_COLOR);
                 isTemporaryOverlay = true;
 
-            } else if (bundleKeyset.contains("sunCycle") && bundleKeyset.contains("sunCycleColorHandler")) {
+                overlayStateHandler.setFilterColor(filterColor);
+                colorIsInitialized = true;
 
-                // Otherwise calculate color from sunCycle
-                sunCycle = Parcels.unwrap(bundle.getParcelable("sunCycle"));
-                sunCycleColorHandler = Parcels.unwrap(bundle.getParcelable("sunCycleColorHandler"));
+            } else if (bundleKeyset.contains(EXTRA_SUNRISE_POSITION) && bundleKeyset.contains(EXTRA_SUNSET_POSITION)) {
 
-                sunCycle.updateSunPositionHorizontal(new Date());
-                filterColor = sunCycleColorHandler.getOverlayColor(sunCycle);
+                // Otherwise calculate color from sunCycle
+                sunCycle = new SunCycle(new Date(), bundle.getFloat(EXTRA_SUNRISE_POSITION),
+                        bundle.getFloat(EXTRA_SUNSET_POSITION));
+                filterSchedule = new SunCycleScheduleGenerator(sunCycle).generate();
+                colorSettings = SunCycleColorSettings.of(bundle.getInt(EXTRA_COLOR_FILTER_INTENSITY),
+                        bundle.getInt(EXTRA_BRIGHTNESS_FILTER_INTENSITY));
+                isAdaptiveBrightness = bundle.getBoolean(EXTRA_ADAPTIVE_BRIGHTNESS);
                 isTemporaryOverlay = false;
+                sunCycleDayStartMillis = SunCycle.getDayStartMillis(System.currentTimeMillis(), timeZone);
+
+                if(bundleKeyset.contains(EXTRA_LATITUDE) && bundleKeyset.contains(EXTRA_LONGITUDE)) {
+                    setLocation(bundle.getDouble(EXTRA_LATITUDE), bundle.getDouble(EXTRA_LONGITUDE));
+                }
+
+                // Store the sun cycle so that the overlay can be restored after a reboot
+                overlayStateHandler.saveSunCycle(sunCycle, colorSettings, isAdaptiveBrightness);
+                setActive(true);
+
+                // While the screen is off nobody can see the overlay, so we postpone all work
+                if(!isScreenOn && overlayView != null) {
+                    return START_STICKY;
+                }
+
+                scheduleOverlayAlarm();
+                updateSunCycleColor();
 
             } else {
                 throw new IllegalArgumentException("Intent sent to overlay service with missing extras");
             }
 
-            /**
-             * We save the latest filter color in SharedPreferences to be retrieved in case the
-             * service is killed due to out of memory, and then restarted
-             */
-            SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(this).edit();
-            editor.putInt("filterColor", filterColor);
-            editor.apply();
-
-            colorIsInitialized = true;
-
         } else {
             System.err.println("Empty intent!");
 
@@ -100,8 +423,7 @@ public class OverlayService extends Service {
                 System.err.println("Retrieving color from SharedPreferences");
 
                 // Restore data from SharedPreferences
-                SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-                filterColor = sharedPreferences.getInt("filterColor", filterColorDefaultValue);
+                filterColor = overlayStateHandler.getFilterColor();
             }
         }
 
@@ -109,7 +431,7 @@ public class OverlayService extends Service {
         if(overlayView == null) {
 
             WindowManager windowManager = (WindowManager) getApplicationContext().getSystemService(Context.WINDOW_SERVICE);
-            overlayView = new LinearLayout(this);
+            overlayView = createOverlayView();
 
             // We set the overlay to be non-interactive
             overlayView.setFocusable(false);
@@ -118,21 +440,26 @@ public class OverlayService extends Service {
             overlayView.setLongClickable(false);
             overlayView.setFocusableInTouchMode(false);
 
+            // The view starts out transparent, so the overlay fades in
+            colorTransition = new OverlayColorTransition(overlayView, handler, Color.TRANSPARENT);
+
             // Parameters for a fullscreen transparent overlay
             WindowManager.LayoutParams layoutParams = new WindowManager.LayoutParams(
                     WindowManager.LayoutParams.MATCH_PARENT,
                     WindowManager.LayoutParams.MATCH_PARENT,
                     WindowManager.LayoutParams.TYPE_SYSTEM_OVERLAY,
-                    WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN,
+                    WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
+                            | WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED,
                     PixelFormat.TRANSPARENT);
 
             windowManager.addView(overlayView, layoutParams);
 
             Bitmap iconBitmap = BitmapFactory.decodeResource(getResources(), R.mipmap.ic_launcher);
 
-            // Intent for opening the app
+            // Intent for opening the app, resolved by name so that no UI classes are loaded here
             PendingIntent notifyPendingIntent = PendingIntent.getActivity(getApplicationContext(),
-                    Constants.ACTIVITY_MAIN_NOTIFICATION_REQUEST_CODE, new Intent(this, MainActivity.class), 0);
+                    Constants.ACTIVITY_MAIN_NOTIFICATION_REQUEST_CODE,
+                    getPackageManager().getLaunchIntentForPackage(getPackageName()), 0);
 
             // Persistent notification that is displayed on lowest priority whenever app is enabled
             Notification.Builder builder = new Notification.Builder(getApplicationContext());
@@ -151,7 +478,8 @@ public class OverlayService extends Service {
         }
 
         // Now that our view is added, we can simply change it's color
-        overlayView.setBackgroundColor(filterColor);
+        colorTransition.animateTo(filterColor, getColorTransitionMillis(isTemporaryOverlay));
+        updateAmbientLightListening();
 
         // If it's not a temporary overlay we sticky it, but if it's temporary then just fire
         if(!isTemporaryOverlay) {
@@ -161,10 +489,206 @@ public class OverlayService extends Service {
         }
     }
 
+    /** Returns an intent which makes the overlay follow a sun cycle, with the color settings applied to it */
+    public static Intent createSunCycleIntent(Context context, SunCycle sunCycle, LocationData locationData,
+                                              SunCycleColorSettings colorSettings, boolean isAdaptiveBrightness) {
+        Intent intent = new Intent(context, OverlayService.class);
+
+        // The service runs in its own process, so we only send the primitives it needs
+        intent.putExtra(EXTRA_SUNRISE_POSITION, sunCycle.getSunrisePositionHorizontal());
+        intent.putExtra(EXTRA_SUNSET_POSITION, sunCycle.getSunsetPositionHorizontal());
+        intent.putExtra(EXTRA_COLOR_FILTER_INTENSITY, colorSettings.getColorFilterIntensity());
+        intent.putExtra(EXTRA_BRIGHTNESS_FILTER_INTENSITY, colorSettings.getBrightnessFilterIntensity());
+        intent.putExtra(EXTRA_ADAPTIVE_BRIGHTNESS, isAdaptiveBrightness);
+
+        // Without a location the service keeps the same sun cycle every day
+        if(locationData != null) {
+            intent.putExtra(EXTRA_LATITUDE, locationData.getLatitude());
+            intent.putExtra(EXTRA_LONGITUDE, locationData.getLongitude());
+        }
+
+        return intent;
+    }
+
+    /** Creates the handler of the stored state, which tests override to count the writes */
+    OverlayStateHandler createOverlayStateHandler() {
+        return new OverlayStateHandler(this);
+    }
+
+    /** Creates the view that covers the screen, which tests override to count the updates */
+    View createOverlayView() {
+        return new LinearLayout(this);
+    }
+
+    /** Returns how long the overlay fades to a new color, which tests override to show every color at once */
+    long getColorTransitionMillis(boolean isPreview) {
+        return isPreview ? PREVIEW_TRANSITION_MILLIS : SUN_CYCLE_TRANSITION_MILLIS;
+    }
+
+    /** Creates the source of the ambient light, which tests override with a fake sensor */
+    AmbientLightSource createAmbientLightSource() {
+        return new SensorAmbientLightSource(this);
+    }
+
+    /** Listens to the ambient light only while it can change the overlay that is shown */
+    private void updateAmbientLightListening() {
+        if(isAdaptiveBrightness && isScreenOn && !isTemporaryOverlay && sunCycle != null) {
+            adaptiveBrightnessHandler.start();
+        } else {
+            adaptiveBrightnessHandler.stop();
+            handler.removeCallbacks(updateAmbientLight);
+        }
+    }
+
+    /** Does a single catch-up calculation of the sun cycle color, and resumes the repeating alarm */
+    private void onScreenOn() {
+
+        // Nothing to catch up on if we are not following a sun cycle
+        if(sunCycle == null || colorSettings == null || isTemporaryOverlay) {
+            return;
+        }
+
+        updateAmbientLightListening();
+        updateSunCycleColor();
+
+        // The screen was off since the last color, so there is nothing to fade from
+        if(colorTransition != null) {
+            colorTransition.snapTo(filterColor);
+        }
+
+        scheduleOverlayAlarm();
+    }
+
+    /** Stores whether the overlay is active, and updates the tiles and widgets if it changed */
+    private void setActive(boolean isActive) {
+        if(overlayStateHandler.isActive() != isActive) {
+            overlayStateHandler.setActive(isActive);
+            new OverlayToggleHandler(this).updateToggles();
+        }
+    }
+
+    /** Calculates the filter color for the current time, from the schedule of the sun cycle */
+    private void updateSunCycleColor() {
+        int previousFilterColor = filterColor;
+
+        long currentTimeMillis = System.currentTimeMillis();
+
+        // A new sun cycle is only built once a day, or when the time zone has changed
+        if(SunCycle.getDayStartMillis(currentTimeMillis, timeZone) != sunCycleDayStartMillis) {
+            rollOverSunCycle(currentTimeMillis);
+        }
+
+        // Neither of these allocate, since they run on every alarm
+        sunCycle.updateSunPositionHorizontal(currentTimeMillis, timeZone);
+        filterColor = filterSchedule.getOverlayColor(sunCycle.getSunPositionHorizontal(), getAppliedColorSettings());
+
+        /**
+         * We save the latest filter color in SharedPreferences to be retrieved in case the
+         * service is killed due to out of memory, and then restarted
+         */
+        if(!colorIsInitialized || filterColor != previousFilterColor) {
+            overlayStateHandler.setFilterColor(filterColor);
+        }
+
+        colorIsInitialized = true;
+    }
+
+    /** Returns the color settings to apply, where the brightness might be adapted to the ambient light */
+    private SunCycleColorSettings getAppliedColorSettings() {
+        if(!isAdaptiveBrightness || !adaptiveBrightnessHandler.isStarted()) {
+            return colorSettings;
+        }
+
+        // The settings are looked up from a table, so this does not allocate either
+        return SunCycleColorSettings.of(colorSettings.getColorFilterIntensity(),
+                adaptiveBrightnessHandler.getBrightnessFilterIntensity(colorSettings.getBrightnessFilterIntensity()));
+    }
+
+    /**
+     * Builds the sun cycle of the current day, at the last known location of the platform if it
+     * has moved, otherwise at the stored location. Without any location the sun cycle is kept.
+     */
+    private void rollOverSunCycle(long currentTimeMillis) {
+        Tracer.beginSection("OverlayService.rollOverSunCycle");
+        try {
+            sunCycleDayStartMillis = SunCycle.getDayStartMillis(currentTimeMillis, timeZone);
+
+            LocationData platformLocationData = platformLocationSource.getLocationData();
+
+            if(platformLocationData != null) {
+                setLocation(platformLocationData.getLatitude(), platformLocationData.getLongitude());
+            }
+
+            if(!hasLocation) {
+                return;
+            }
+
+            sunCycle = SolarCalculator.getSunCycle(currentTimeMillis, timeZone, latitude, longitude);
+            filterSchedule = new SunCycleScheduleGenerator(sunCycle).generate();
+            overlayStateHandler.saveSunCycle(sunCycle, colorSettings, isAdaptiveBrightness);
+        } finally {
+            Tracer.endSection();
+        }
+    }
+
+    /** Sets the location of the sun cycle, and stores it if it has moved noticeably */
+    private void setLocation(double latitude, double longitude) {
+        LocationData locationData = new LocationData(LocationData.UNKNOWN, LocationData.UNKNOWN, latitude, longitude);
+        LocationData previousLocationData = new LocationData(LocationData.UNKNOWN, LocationData.UNKNOWN,
+                this.latitude, this.longitude);
+
+        if(!hasLocation || locationData.getDistanceTo(previousLocationData) > LOCATION_CHANGE_KILOMETERS) {
+            this.hasLocation = true;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            overlayStateHandler.saveLocation(latitude, longitude);
+        }
+    }
+
+    /** Repeats the overlay intent in 15 minutes, every 15 minutes, overwriting any previous alarm */
+    private void scheduleOverlayAlarm() {
+        if(pendingOverlayIntent != null) {
+            alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                    AlarmManager.INTERVAL_FIFTEEN_MINUTES, AlarmManager.INTERVAL_FIFTEEN_MINUTES,
+                    pendingOverlayIntent);
+        }
+    }
+
+    /** Cancels the repeating alarm, if we have one */
+    private void cancelOverlayAlarm() {
+        if(pendingOverlayIntent != null) {
+            alarmManager.cancel(pendingOverlayIntent);
+        }
+    }
+
+    /** Returns whether the screen is currently on */
+    @SuppressWarnings("deprecation")
+    private boolean isScreenInteractive() {
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH) {
+            return powerManager.isInteractive();
+        } else {
+            return powerManager.isScreenOn();
+        }
+    }
+
     @Override
     public void onDestroy() {
 
         super.onDestroy();
+        handler.removeCallbacks(applyPendingUpdates);
+
+        if(colorTransition != null) {
+            colorTransition.cancel();
+        }
+
+        adaptiveBrightnessHandler.stop();
+        handler.removeCallbacks(updateAmbientLight);
+        unregisterReceiver(screenStateReceiver);
+        cancelOverlayAlarm();
+        setActive(false);
+
         if(overlayView != null){
             WindowManager windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
             windowManager.removeView(overlayView);
@@ -0,0 +1,303 @@
+package co.adrianblan.lightly.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Color;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import co.adrianblan.lightly.suncycle.SunCycle;
+import co.adrianblan.lightly.suncycle.SunCycleColorSettings;
+
+/**
+ * Handles persisting and restoring the state of the overlay.
+ *
+ * Everything is stored as primitives, so that the overlay can be restored without Gson, Parceler
+ * or any of the data that only the main screen needs.
+ *
+ * The state is only written from the overlay process, by OverlayService and by the tiles and
+ * widgets which run next to it, but is also read from the main process. SharedPreferences can not
+ * be shared between processes, so the state is kept in a small file instead. The overlay process
+ * keeps what it has written in memory, and writes the file on a background thread to a temporary
+ * file which is then renamed over it, so that a reader always sees either the old or the new
+ * state in full. Other processes read the file on every access, through getState() which reads
+ * it once for all values.
+ *
+ * The filter color is only read by the overlay process, and is updated on every preview, so it
+ * stays in SharedPreferences which write it in the background.
+ */
+public class OverlayStateHandler {
+
+    private static final String STATE_FILE_NAME = "overlay_state.properties";
+    private static final String PREFERENCES_NAME = "overlay_state";
+
+    private static final String KEY_IS_ACTIVE = "isActive";
+    private static final String KEY_HAS_SUN_CYCLE = "hasSunCycle";
+    private static final String KEY_SUNRISE_POSITION = "sunrisePositionHorizontal";
+    private static final String KEY_SUNSET_POSITION = "sunsetPositionHorizontal";
+    private static final String KEY_COLOR_FILTER_INTENSITY = "colorFilterIntensity";
+    private static final String KEY_BRIGHTNESS_FILTER_INTENSITY = "brightnessFilterIntensity";
+    private static final String KEY_ADAPTIVE_BRIGHTNESS = "adaptiveBrightness";
+    private static final String KEY_HAS_LOCATION = "hasLocation";
+    private static final String KEY_LATITUDE = "latitude";
+    private static final String KEY_LONGITUDE = "longitude";
+    private static final String KEY_FILTER_COLOR = "filterColor";
+
+    // Guards the written and pending states of this process
+    private static final Object STATE_LOCK = new Object();
+
+    // The states that this process has written, which are newer than their files until they are written
+    private static final Map<File, Properties> writtenStates = new HashMap<>();
+
+    // The newest state of each file that is waiting to be written, so that a burst of writes syncs once
+    private static final Map<File, Properties> pendingStates = new HashMap<>();
+
+    // Writes and syncs the files in order, away from the main thread
+    private static final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+
+    private final Context context;
+    private final File stateFile;
+
+    /** The stored state as it was read at once, so that a restore only reads and parses the file once */
+    public static class State {
+
+        private final Properties properties;
+
+        private State(Properties properties) {
+            this.properties = properties;
+        }
+
+        /** Returns whether the overlay was following a sun cycle the last time it was running */
+        public boolean isActive() {
+            return getBoolean(properties, KEY_IS_ACTIVE);
+        }
+
+        /** Returns whether the overlay has stored if it is active, which it has once it has been started */
+        public boolean hasActiveState() {
+            return properties.containsKey(KEY_IS_ACTIVE);
+        }
+
+        /** Returns whether a sun cycle has been stored, which is required to restore the overlay */
+        public boolean hasSunCycle() {
+            return getBoolean(properties, KEY_HAS_SUN_CYCLE);
+        }
+
+        /** Returns the stored sun cycle, updated to the current time. Requires hasSunCycle() */
+        public SunCycle getSunCycle(Date current) {
+            return new SunCycle(current, getFloat(properties, KEY_SUNRISE_POSITION),
+                    getFloat(properties, KEY_SUNSET_POSITION));
+        }
+
+        /** Returns the stored color settings. Requires hasSunCycle() */
+        public SunCycleColorSettings getColorSettings() {
+            return SunCycleColorSettings.of(getInt(properties, KEY_COLOR_FILTER_INTENSITY),
+                    getInt(properties, KEY_BRIGHTNESS_FILTER_INTENSITY));
+        }
+
+        /** Returns whether the brightness filter adapts to the ambient light. Requires hasSunCycle() */
+        public boolean isAdaptiveBrightness() {
+            return getBoolean(properties, KEY_ADAPTIVE_BRIGHTNESS);
+        }
+
+        /** Returns whether a location has been stored, which is required to calculate new sun cycles */
+        public boolean hasLocation() {
+            return getBoolean(properties, KEY_HAS_LOCATION);
+        }
+
+        /** Returns the stored latitude in degrees. Requires hasLocation() */
+        public double getLatitude() {
+            return getFloat(properties, KEY_LATITUDE);
+        }
+
+        /** Returns the stored longitude in degrees. Requires hasLocation() */
+        public double getLongitude() {
+            return getFloat(properties, KEY_LONGITUDE);
+        }
+    }
+
+    public OverlayStateHandler(Context context) {
+        this.context = context;
+        this.stateFile = new File(context.getFilesDir(), STATE_FILE_NAME);
+    }
+
+    /** Returns the preferences of the overlay process, which must never be read by the main process */
+    private SharedPreferences getSharedPreferences() {
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /** Returns the whole stored state, read at once */
+    public State getState() {
+        return new State(readState());
+    }
+
+    /** Returns whether the overlay was following a sun cycle the last time it was running */
+    public boolean isActive() {
+        return getState().isActive();
+    }
+
+    /** Stores whether the overlay is active. Must only be called from the overlay process */
+    public void setActive(boolean isActive) {
+        Properties values = new Properties();
+        values.setProperty(KEY_IS_ACTIVE, String.valueOf(isActive));
+        writeState(values);
+    }
+
+    /**
+     * Stores the sun cycle together with the color settings that are applied to it. Must only be
+     * called from the overlay process.
+     */
+    public void saveSunCycle(SunCycle sunCycle, SunCycleColorSettings colorSettings, boolean isAdaptiveBrightness) {
+        Properties values = new Properties();
+        values.setProperty(KEY_HAS_SUN_CYCLE, String.valueOf(true));
+        values.setProperty(KEY_SUNRISE_POSITION, String.valueOf(sunCycle.getSunrisePositionHorizontal()));
+        values.setProperty(KEY_SUNSET_POSITION, String.valueOf(sunCycle.getSunsetPositionHorizontal()));
+        values.setProperty(KEY_COLOR_FILTER_INTENSITY, String.valueOf(colorSettings.getColorFilterIntensity()));
+        values.setProperty(KEY_BRIGHTNESS_FILTER_INTENSITY, String.valueOf(colorSettings.getBrightnessFilterIntensity()));
+        values.setProperty(KEY_ADAPTIVE_BRIGHTNESS, String.valueOf(isAdaptiveBrightness));
+        writeState(values);
+    }
+
+    /** Stores the location of the sun cycle, in degrees. Must only be called from the overlay process */
+    public void saveLocation(double latitude, double longitude) {
+        Properties values = new Properties();
+        values.setProperty(KEY_HAS_LOCATION, String.valueOf(true));
+        values.setProperty(KEY_LATITUDE, String.valueOf((float) latitude));
+        values.setProperty(KEY_LONGITUDE, String.valueOf((float) longitude));
+        writeState(values);
+    }
+
+    /** Returns the latest applied filter color, in case the service was killed and restarted */
+    public int getFilterColor() {
+        return getSharedPreferences().getInt(KEY_FILTER_COLOR, Color.TRANSPARENT);
+    }
+
+    public void setFilterColor(int filterColor) {
+        getSharedPreferences().edit().putInt(KEY_FILTER_COLOR, filterColor).apply();
+    }
+
+    /** Returns a copy of the state this process has written, otherwise reads the whole state file */
+    private Properties readState() {
+        synchronized (STATE_LOCK) {
+            Properties writtenState = writtenStates.get(stateFile);
+
+            if(writtenState != null) {
+                return copy(writtenState);
+            }
+        }
+
+        return readStateFile(stateFile);
+    }
+
+    /** Writes the values into the state, and queues a write of the whole state file */
+    private void writeState(Properties values) {
+        synchronized (STATE_LOCK) {
+            Properties state = writtenStates.get(stateFile);
+
+            // Only the overlay process writes, so the file can not change after this first read
+            if(state == null) {
+                state = readStateFile(stateFile);
+                writtenStates.put(stateFile, state);
+            }
+
+            state.putAll(values);
+
+            // A write that is already queued picks up the newest state
+            if(pendingStates.put(stateFile, copy(state)) == null) {
+                writeExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Properties pendingState;
+
+                        synchronized (STATE_LOCK) {
+                            pendingState = pendingStates.remove(stateFile);
+                        }
+
+                        writeStateFile(stateFile, pendingState);
+                    }
+                });
+            }
+        }
+    }
+
+    /** Reads the whole state file, which is empty if nothing has been stored yet */
+    private static Properties readStateFile(File stateFile) {
+        Properties state = new Properties();
+
+        if(!stateFile.exists()) {
+            return state;
+        }
+
+        try {
+            FileInputStream inputStream = new FileInputStream(stateFile);
+
+            try {
+                state.load(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: Unable to read the overlay state");
+            e.printStackTrace();
+        }
+
+        return state;
+    }
+
+    /** Writes the whole state to a temporary file, and replaces the state file with it at once */
+    private static void writeStateFile(File stateFile, Properties state) {
+        File temporaryFile = null;
+
+        try {
+            temporaryFile = File.createTempFile(STATE_FILE_NAME, ".tmp", stateFile.getParentFile());
+            FileOutputStream outputStream = new FileOutputStream(temporaryFile);
+
+            try {
+                state.store(outputStream, null);
+                outputStream.flush();
+                outputStream.getFD().sync();
+            } finally {
+                outputStream.close();
+            }
+
+            if(!temporaryFile.renameTo(stateFile)) {
+                throw new IOException("Could not rename " + temporaryFile + " to " + stateFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: Unable to write the overlay state");
+            e.printStackTrace();
+
+            if(temporaryFile != null) {
+                temporaryFile.delete();
+            }
+        }
+    }
+
+    private static Properties copy(Properties state) {
+        Properties copy = new Properties();
+        copy.putAll(state);
+        return copy;
+    }
+
+    private static boolean getBoolean(Properties state, String key) {
+        return Boolean.parseBoolean(state.getProperty(key));
+    }
+
+    private static int getInt(Properties state, String key) {
+        String value = state.getProperty(key);
+        return value != null ? Integer.parseInt(value) : 0;
+    }
+
+    private static float getFloat(Properties state, String key) {
+        String value = state.getProperty(key);
+        return value != null ? Float.parseFloat(value) : 0f;
+    }
+}
@@ -0,0 +1,37 @@
+package co.adrianblan.lightly.service;
+
+import android.content.Intent;
+import android.os.SystemClock;
+
+/**
+ * Tags the updates that are sent to OverlayService with a sequence number and a timestamp, so that
+ * the service can collapse queued updates and drop the ones that are older than what it has applied.
+ *
+ * The sequence numbers are based on the time since boot, so that they also increase between the
+ * processes that send updates. Updates within the same millisecond are ordered by a counter.
+ */
+public final class OverlayUpdateSequence {
+
+    public static final String EXTRA_SEQUENCE = "overlaySequence";
+    public static final String EXTRA_TIMESTAMP = "overlayTimestamp";
+
+    // Number of bits of the sequence that order the updates within a millisecond
+    private static final int COUNTER_BITS = 10;
+
+    private static long lastSequence;
+
+    private OverlayUpdateSequence() {}
+
+    /** Returns a sequence number which is larger than every earlier one */
+    public static synchronized long next() {
+        lastSequence = Math.max(lastSequence + 1, SystemClock.elapsedRealtime() << COUNTER_BITS);
+        return lastSequence;
+    }
+
+    /** Tags an intent for OverlayService with the next sequence number and the current time */
+    public static Intent tag(Intent intent) {
+        intent.putExtra(EXTRA_SEQUENCE, next());
+        intent.putExtra(EXTRA_TIMESTAMP, SystemClock.elapsedRealtime());
+        return intent;
+    }
+}
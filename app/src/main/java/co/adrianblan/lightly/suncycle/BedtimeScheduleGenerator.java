@@ -0,0 +1,97 @@
+package co.adrianblan.lightly.suncycle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates a schedule around a fixed bedtime and wake up time, independent of the sun.
+ *
+ * The filters fade in with a smooth transition that ends at bedtime, and fade out with a smooth
+ * transition that starts at the wake up time. Bedtime may be both before and after midnight, and
+ * a transition may also cross midnight, where it is split in two at its strength at midnight.
+ */
+public class BedtimeScheduleGenerator implements FilterScheduleGenerator {
+
+    private final float bedtimePosition;
+    private final float wakeUpPosition;
+    private final float transitionDistance;
+
+    /** Creates a generator from a bedtime and wake up time [0, 1] and a transition distance [0, 1] */
+    public BedtimeScheduleGenerator(float bedtimePosition, float wakeUpPosition, float transitionDistance) {
+        this.bedtimePosition = bedtimePosition;
+        this.wakeUpPosition = wakeUpPosition;
+        this.transitionDistance = transitionDistance;
+    }
+
+    @Override
+    public FilterSchedule generate() {
+        List<FilterKeyframe> keyframes = new ArrayList<>();
+
+        // The strength at midnight decides the values at both ends of the day
+        float midnightStrength = getStrength(0f);
+        addKeyframe(keyframes, 0f, midnightStrength);
+        addKeyframe(keyframes, 1f, midnightStrength);
+
+        addTransition(keyframes, bedtimePosition - transitionDistance, 0f, 1f);
+        addTransition(keyframes, wakeUpPosition, 1f, 0f);
+
+        return new FilterSchedule(keyframes);
+    }
+
+    /**
+     * Adds a smooth transition which starts at a position, moved into the day if it is outside of
+     * [0, 1]. The keyframes at midnight already hold the strength there, so the transition only
+     * adds its ends which are inside the day, and a transition that crosses midnight becomes the
+     * two parts on each side of it.
+     */
+    private void addTransition(List<FilterKeyframe> keyframes, float start, float startStrength, float endStrength) {
+        start = wrap(start);
+        float end = start + transitionDistance;
+
+        if(start > 0f) {
+            addKeyframe(keyframes, start, startStrength);
+        }
+
+        if(end < 1f) {
+            addKeyframe(keyframes, end, endStrength);
+        } else if(end > 1f) {
+            addKeyframe(keyframes, end - 1f, endStrength);
+        }
+    }
+
+    /**
+     * Returns the strength [0, 1] at a position [0, 1] of the day, which is eased like the
+     * keyframes in the transitions. Positions are compared around the clock, so that the night
+     * and the transitions may wrap around midnight.
+     */
+    private float getStrength(float position) {
+        float sinceFadeInStart = wrap(position - (bedtimePosition - transitionDistance));
+
+        if(sinceFadeInStart < transitionDistance) {
+            return getSmoothFraction(sinceFadeInStart / transitionDistance);
+        }
+
+        float sinceWakeUp = wrap(position - wakeUpPosition);
+
+        if(sinceWakeUp < transitionDistance) {
+            return 1f - getSmoothFraction(sinceWakeUp / transitionDistance);
+        }
+
+        // Between bedtime and wake up we sleep, otherwise we are awake
+        return wrap(position - bedtimePosition) < wrap(wakeUpPosition - bedtimePosition) ? 1f : 0f;
+    }
+
+    private static void addKeyframe(List<FilterKeyframe> keyframes, float position, float strength) {
+        keyframes.add(new FilterKeyframe(position, strength, strength, FilterKeyframe.Easing.SMOOTH));
+    }
+
+    /** Returns the same eased fraction [0, 1] as the SMOOTH keyframes of a FilterSchedule */
+    private static float getSmoothFraction(float fraction) {
+        return fraction * fraction * (3f - 2f * fraction);
+    }
+
+    /** Moves a position into [0, 1[, as the same time of another day */
+    private static float wrap(float position) {
+        return position - (float) Math.floor(position);
+    }
+}
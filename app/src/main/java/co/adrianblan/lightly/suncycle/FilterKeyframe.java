@@ -0,0 +1,50 @@
+package co.adrianblan.lightly.suncycle;
+
+/**
+ * A point in time of a FilterSchedule, with the strengths of the filters at that time.
+ *
+ * Strengths are in [0, 1], where 0 means no filter and 1 means the full night filter chosen by the
+ * user. The easing decides how the strengths change from this keyframe until the next one.
+ */
+public final class FilterKeyframe {
+
+    public enum Easing {
+        LINEAR, // Changes at a constant rate
+        SMOOTH, // Starts and ends slowly
+        STEP // Keeps the strengths of this keyframe until the next one
+    }
+
+    private final float position;
+    private final float temperatureStrength;
+    private final float brightnessStrength;
+    private final Easing easing;
+
+    /** Creates a keyframe at a position [0, 1] in the day, with strengths [0, 1] of the filters */
+    public FilterKeyframe(float position, float temperatureStrength, float brightnessStrength, Easing easing) {
+        this.position = position;
+        this.temperatureStrength = temperatureStrength;
+        this.brightnessStrength = brightnessStrength;
+        this.easing = easing;
+    }
+
+    /** Creates a linear keyframe where both filters have the same strength */
+    public FilterKeyframe(float position, float strength) {
+        this(position, strength, strength, Easing.LINEAR);
+    }
+
+    public float getPosition() {
+        return position;
+    }
+
+    public float getTemperatureStrength() {
+        return temperatureStrength;
+    }
+
+    public float getBrightnessStrength() {
+        return brightnessStrength;
+    }
+
+    public Easing getEasing() {
+        return easing;
+    }
+}
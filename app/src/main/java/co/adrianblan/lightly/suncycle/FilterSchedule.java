@@ -0,0 +1,205 @@
+package co.adrianblan.lightly.suncycle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A compiled schedule of the filter strengths over a day.
+ *
+ * The keyframes are sorted and compiled into primitive arrays, so that any position in the day can
+ * be evaluated with a binary search and without allocating, no matter how many keyframes there are.
+ */
+public final class FilterSchedule {
+
+    private static final byte EASING_LINEAR = 0;
+    private static final byte EASING_SMOOTH = 1;
+    private static final byte EASING_STEP = 2;
+
+    private final float[] positions;
+    private final float[] temperatureStrengths;
+    private final float[] brightnessStrengths;
+    private final byte[] easings;
+
+    /** Compiles a list of keyframes, which must not be empty, into a schedule */
+    public FilterSchedule(List<FilterKeyframe> keyframes) {
+
+        if(keyframes.isEmpty()) {
+            throw new IllegalArgumentException("A schedule needs at least one keyframe");
+        }
+
+        List<FilterKeyframe> sortedKeyframes = new ArrayList<>(keyframes);
+        Collections.sort(sortedKeyframes, new Comparator<FilterKeyframe>() {
+            @Override
+            public int compare(FilterKeyframe lhs, FilterKeyframe rhs) {
+                return Float.compare(lhs.getPosition(), rhs.getPosition());
+            }
+        });
+
+        int size = sortedKeyframes.size();
+        positions = new float[size];
+        temperatureStrengths = new float[size];
+        brightnessStrengths = new float[size];
+        easings = new byte[size];
+
+        for(int i = 0; i < size; i++) {
+            FilterKeyframe keyframe = sortedKeyframes.get(i);
+            positions[i] = keyframe.getPosition();
+            temperatureStrengths[i] = keyframe.getTemperatureStrength();
+            brightnessStrengths[i] = keyframe.getBrightnessStrength();
+            easings[i] = getEasingCode(keyframe.getEasing());
+        }
+    }
+
+    /** Returns the strength [0, 1] of the color temperature filter at a position [0, 1] */
+    public float getTemperatureStrength(float position) {
+        return evaluate(temperatureStrengths, position);
+    }
+
+    /** Returns the strength [0, 1] of the brightness filter at a position [0, 1] */
+    public float getBrightnessStrength(float position) {
+        return evaluate(brightnessStrengths, position);
+    }
+
+    /**
+     * Returns the overlay color at a position [0, 1], given the night color settings of the user.
+     *
+     * The alpha of the night color is scaled by the strongest of the two filters, and the weaker
+     * filter has its intensity moved towards no filter. Equal strengths therefore fade the night
+     * color exactly like the sun cycle always has.
+     */
+    public int getOverlayColor(float position, SunCycleColorSettings colorSettings) {
+        return getOverlayColor(getTemperatureStrength(position), getBrightnessStrength(position), colorSettings);
+    }
+
+    /**
+     * Fills an array with the overlay colors at the first count positions [0, 1] of another array.
+     *
+     * Gives the same colors as getOverlayColor, but does not search for the keyframes of each
+     * position. The keyframe is instead walked forward from the one of the previous position, so a
+     * day of increasing positions only passes each keyframe once. Does not allocate.
+     */
+    public void getOverlayColors(float[] samplePositions, SunCycleColorSettings colorSettings, int[] colors, int count) {
+        int keyframe = -1;
+
+        for(int i = 0; i < count; i++) {
+            float position = samplePositions[i];
+
+            // Positions that go back, like at midnight, walk from the first keyframe again
+            if(keyframe >= 0 && positions[keyframe] > position) {
+                keyframe = -1;
+            }
+
+            while(keyframe < positions.length - 1 && positions[keyframe + 1] <= position) {
+                keyframe++;
+            }
+
+            colors[i] = getOverlayColor(evaluate(temperatureStrengths, keyframe, position),
+                    evaluate(brightnessStrengths, keyframe, position), colorSettings);
+        }
+    }
+
+    /** Returns the overlay color of the strengths [0, 1] of the two filters */
+    private static int getOverlayColor(float temperatureStrength, float brightnessStrength,
+                                       SunCycleColorSettings colorSettings) {
+        float strength = Math.max(temperatureStrength, brightnessStrength);
+
+        if(strength <= 0f) {
+            return 0;
+        }
+
+        int overlayColorMax;
+
+        if(temperatureStrength == brightnessStrength) {
+            overlayColorMax = colorSettings.getOverlayColorMax();
+        } else {
+            overlayColorMax = SunCycleColorSettings.of(
+                    getRelaxedIntensity(colorSettings.getColorFilterIntensity(), temperatureStrength / strength),
+                    getRelaxedIntensity(colorSettings.getBrightnessFilterIntensity(), brightnessStrength / strength))
+                    .getOverlayColorMax();
+        }
+
+        int alpha = (int) ((overlayColorMax >>> 24) * Math.min(strength, 1f));
+        return (alpha << 24) | (overlayColorMax & 0x00FFFFFF);
+    }
+
+    /** Returns the number of keyframes in the schedule */
+    public int size() {
+        return positions.length;
+    }
+
+    /** Evaluates the values at a position, by interpolating between the surrounding keyframes */
+    private float evaluate(float[] values, float position) {
+        int last = positions.length - 1;
+
+        if(position <= positions[0] || position >= positions[last]) {
+            return evaluate(values, 0, position);
+        }
+
+        // Find the last keyframe at or before the position
+        int low = 0;
+        int high = last;
+
+        while(low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if(positions[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return evaluate(values, low, position);
+    }
+
+    /** Evaluates the values at a position, given the last keyframe at or before it */
+    private float evaluate(float[] values, int index, float position) {
+        int last = positions.length - 1;
+
+        if(position <= positions[0]) {
+            return values[0];
+        }
+
+        if(position >= positions[last]) {
+            return values[last];
+        }
+
+        float segmentLength = positions[index + 1] - positions[index];
+
+        if(segmentLength <= 0f) {
+            return values[index + 1];
+        }
+
+        float fraction = (position - positions[index]) / segmentLength;
+
+        switch(easings[index]) {
+            case EASING_SMOOTH:
+                fraction = fraction * fraction * (3f - 2f * fraction);
+                break;
+            case EASING_STEP:
+                fraction = 0f;
+                break;
+        }
+
+        return values[index] + (values[index + 1] - values[index]) * fraction;
+    }
+
+    /** Moves an intensity [0, 100] towards no filter, as the strength [0, 1] goes towards 0 */
+    private static int getRelaxedIntensity(int intensity, float strength) {
+        int maxIntensity = SunCycleColorSettings.INTENSITY_MAX;
+        return maxIntensity - Math.round((maxIntensity - intensity) * strength);
+    }
+
+    private static byte getEasingCode(FilterKeyframe.Easing easing) {
+        switch(easing) {
+            case SMOOTH:
+                return EASING_SMOOTH;
+            case STEP:
+                return EASING_STEP;
+            default:
+                return EASING_LINEAR;
+        }
+    }
+}
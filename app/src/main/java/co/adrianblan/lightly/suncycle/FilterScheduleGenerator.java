@@ -0,0 +1,9 @@
+package co.adrianblan.lightly.suncycle;
+
+/**
+ * Generates a FilterSchedule, for example from a sun cycle or from a fixed bedtime.
+ */
+public interface FilterScheduleGenerator {
+
+    FilterSchedule generate();
+}
@@ -0,0 +1,39 @@
+package co.adrianblan.lightly.suncycle;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Calculates the sun cycle of a day at a position, without any network.
+ *
+ * The twilights are calculated by TwilightCalculator, and are placed in the local day here.
+ */
+public final class SolarCalculator {
+
+    private SolarCalculator() {}
+
+    /**
+     * Returns the sun cycle of the local day of the time, for a position in degrees.
+     *
+     * Twilights which fall outside of the local day are clamped to its start or end, which is
+     * also how days without a night are represented. Days where the sun never rises to the
+     * civil twilight have both at the solar noon.
+     */
+    public static SunCycle getSunCycle(long currentTimeMillis, TimeZone timeZone, double latitude, double longitude) {
+        long dayStartMillis = SunCycle.getDayStartMillis(currentTimeMillis, timeZone);
+        long[] times = new long[2];
+
+        if(TwilightCalculator.getTwilight(dayStartMillis, latitude, longitude, times) == TwilightCalculator.NO_NIGHT) {
+            return new SunCycle(new Date(currentTimeMillis), 0f, 1f);
+        }
+
+        return new SunCycle(new Date(currentTimeMillis), getPosition(times[0], dayStartMillis),
+                getPosition(times[1], dayStartMillis));
+    }
+
+    /** Returns the position [0, 1] of a time in the local day, clamped to the day */
+    private static float getPosition(long timeMillis, long dayStartMillis) {
+        float position = (timeMillis - dayStartMillis) / (float) TwilightCalculator.MILLIS_PER_DAY;
+        return Math.max(0f, Math.min(position, 1f));
+    }
+}
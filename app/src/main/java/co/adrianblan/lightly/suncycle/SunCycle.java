@@ -4,11 +4,12 @@ import org.parceler.Parcel;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
+import java.util.TimeZone;
 
 import co.adrianblan.lightly.helpers.Constants;
+import co.adrianblan.lightly.helpers.Tracer;
 import co.adrianblan.lightly.data.SunriseSunsetData;
 import co.adrianblan.lightly.helpers.Utils;
 
@@ -18,6 +19,12 @@ import co.adrianblan.lightly.helpers.Utils;
 @Parcel
 public class SunCycle {
 
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MILLIS_PER_DAY = MINUTES_PER_DAY * MILLIS_PER_MINUTE;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
     private float sunPositionHorizontal; // Position [0, 1] in x axis that the sun is at
     private float cycleOffsetHorizontal; // Position [0, 1] in x axis that the cycle should be offset
     private float twilightPositionVertical; // Position [0, 1] in y axis that the twilight is at
@@ -28,32 +35,80 @@ public class SunCycle {
     public SunCycle() { /*Required empty bean constructor*/ }
 
     public SunCycle (Date current, SunriseSunsetData sunriseSunsetData) throws ParseException {
-        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("hh:mm:ss aa", Locale.US);
+        this(current, TimeZone.getDefault(), sunriseSunsetData);
+    }
 
-        Date sunrise = simpleDateFormat.parse(sunriseSunsetData.getCivilTwilightBegin());
-        Date sunset = simpleDateFormat.parse(sunriseSunsetData.getCivilTwilightEnd());
+    /** Creates a sun cycle from sunrise and sunset data in UTC, for the local day in a time zone */
+    public SunCycle (Date current, TimeZone timeZone, SunriseSunsetData sunriseSunsetData) throws ParseException {
+        Tracer.beginSection("SunCycle.parse");
+        try {
+            // The times are in UTC, and are moved to the local time of today
+            SimpleDateFormat simpleDateFormat = new SimpleDateFormat("hh:mm:ss aa", Locale.US);
+            simpleDateFormat.setTimeZone(UTC);
+            long offsetMillis = timeZone.getOffset(current.getTime());
+
+            Date sunrise = simpleDateFormat.parse(sunriseSunsetData.getCivilTwilightBegin());
+            Date sunset = simpleDateFormat.parse(sunriseSunsetData.getCivilTwilightEnd());
+
+            float sunrisePositionHorizontal = getScaledTime(sunrise.getTime() + offsetMillis, UTC);
+            float sunsetPositionHorizontal = getScaledTime(sunset.getTime() + offsetMillis, UTC);
+
+            // A twilight which is on another local day is moved to the start or end of today
+            if(sunsetPositionHorizontal < sunrisePositionHorizontal) {
+                if(sunrisePositionHorizontal > 0.5f) {
+                    sunrisePositionHorizontal = 0f;
+                } else {
+                    sunsetPositionHorizontal = 1f;
+                }
+            }
+
+            initializeSunCycle(sunrisePositionHorizontal, sunsetPositionHorizontal);
+            updateSunPositionHorizontal(current.getTime(), timeZone);
+        } finally {
+            Tracer.endSection();
+        }
+    }
 
+    public SunCycle (Date current, Date sunrise, Date sunset) {
         initializeSunCycle(sunrise, sunset);
         updateSunPositionHorizontal(current);
     }
 
-    public SunCycle (Date current, Date sunrise, Date sunset) {
-        initializeSunCycle(sunrise, sunset);
+    /** Creates a copy of a sun cycle */
+    public SunCycle (SunCycle sunCycle) {
+        this.sunPositionHorizontal = sunCycle.sunPositionHorizontal;
+        this.cycleOffsetHorizontal = sunCycle.cycleOffsetHorizontal;
+        this.twilightPositionVertical = sunCycle.twilightPositionVertical;
+        this.sunrisePositionHorizontal = sunCycle.sunrisePositionHorizontal;
+        this.sunsetPositionHorizontal = sunCycle.sunsetPositionHorizontal;
+    }
+
+    /** Creates a sun cycle from already scaled [0, 1] sunrise and sunset positions */
+    public SunCycle (Date current, float sunrisePositionHorizontal, float sunsetPositionHorizontal) {
+        initializeSunCycle(sunrisePositionHorizontal, sunsetPositionHorizontal);
         updateSunPositionHorizontal(current);
     }
 
+    /** Returns a sun cycle with a reasonable sunrise and sunset in local time, for when there is no data */
+    public static SunCycle getDummySunCycle(Date current) {
+        return new SunCycle(current, 8 / 24f, 17 / 24f);
+    }
+
     /**
      * Initializes a sun cycle, given the Dates of sunrise and sunset.
      * Sunset and sunrise are assumed to be during the same day.
      */
     private void initializeSunCycle(Date sunrise, Date sunset) {
 
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(sunrise);
-
         // Convert the dates to [0, 1] positions
-        sunrisePositionHorizontal = getScaledTime(sunrise);
-        sunsetPositionHorizontal = getScaledTime(sunset);
+        initializeSunCycle(getScaledTime(sunrise), getScaledTime(sunset));
+    }
+
+    /** Initializes a sun cycle, given the [0, 1] positions of sunrise and sunset */
+    private void initializeSunCycle(float sunrisePositionHorizontal, float sunsetPositionHorizontal) {
+
+        this.sunrisePositionHorizontal = sunrisePositionHorizontal;
+        this.sunsetPositionHorizontal = sunsetPositionHorizontal;
 
         // The position where the sun is at it's highest
         float solarNoonHorizontalPosition = sunrisePositionHorizontal + (sunsetPositionHorizontal - sunrisePositionHorizontal) / 2f;
@@ -75,19 +130,69 @@ public class SunCycle {
         return (float) Math.sin(positionHorizontal * Constants.TAU - cycleOffsetHorizontal * Constants.TAU);
     }
 
+    /**
+     * Fills an array with the heights [-1, 1] of count positions, from a start position [0, 1] in steps.
+     *
+     * The phases are calculated in a loop of their own before the sines, so that the first loop is
+     * a plain counted loop over the array which the JIT can vectorize. Does not allocate.
+     */
+    public static void getVerticalPositions(float startPosition, float positionStep, float cycleOffsetHorizontal,
+                                            float[] heights, int count) {
+        double startPhase = startPosition * Constants.TAU - cycleOffsetHorizontal * Constants.TAU;
+        double phaseStep = positionStep * Constants.TAU;
+
+        for(int i = 0; i < count; i++) {
+            heights[i] = (float) (startPhase + i * phaseStep);
+        }
+
+        for(int i = 0; i < count; i++) {
+            heights[i] = (float) Math.sin(heights[i]);
+        }
+    }
+
+    /**
+     * Fills an array with the positions [0, 1] of count times, from a start time in milliseconds
+     * in steps, in a time zone. The positions wrap around to 0 at each midnight. Does not allocate.
+     */
+    public static void getPositionsHorizontal(long startTimeMillis, long stepMillis, TimeZone timeZone,
+                                              float[] positions, int count) {
+        for(int i = 0; i < count; i++) {
+            positions[i] = getScaledTime(startTimeMillis + i * stepMillis, timeZone);
+        }
+    }
+
     /** Calculates the position of the sun for the current time, given the initialized sun cycle */
     public void updateSunPositionHorizontal(Date current) {
         sunPositionHorizontal = getScaledTime(current);
     }
 
+    /**
+     * Calculates the position of the sun for a time in milliseconds, in a time zone.
+     * Does not allocate, so that it can be called on every overlay update.
+     */
+    public void updateSunPositionHorizontal(long currentTimeMillis, TimeZone timeZone) {
+        sunPositionHorizontal = getScaledTime(currentTimeMillis, timeZone);
+    }
+
     /** Scales a Date [0, 1] according to how far it is in the current date */
     private float getScaledTime(Date date) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
+        return getScaledTime(date.getTime(), TimeZone.getDefault());
+    }
+
+    /** Returns the start of the local day of a time in milliseconds, in the time zone. Does not allocate */
+    public static long getDayStartMillis(long timeMillis, TimeZone timeZone) {
+        long localMillis = timeMillis + timeZone.getOffset(timeMillis);
+        return timeMillis - (((localMillis % MILLIS_PER_DAY) + MILLIS_PER_DAY) % MILLIS_PER_DAY);
+    }
+
+    /** Scales a time in milliseconds [0, 1] according to how far it is in its day in the time zone */
+    private static float getScaledTime(long timeMillis, TimeZone timeZone) {
+        long localMinutes = (timeMillis + timeZone.getOffset(timeMillis)) / MILLIS_PER_MINUTE;
+        int minuteOfDay = (int) (((localMinutes % MINUTES_PER_DAY) + MINUTES_PER_DAY) % MINUTES_PER_DAY);
 
         // Scale according to hours and minutes
-        float scaledTime = calendar.get(Calendar.HOUR_OF_DAY) / 24f;
-        scaledTime += calendar.get(Calendar.MINUTE) / (60f * 24f);
+        float scaledTime = (minuteOfDay / 60) / 24f;
+        scaledTime += (minuteOfDay % 60) / (60f * 24f);
 
         return scaledTime;
     }
@@ -9,7 +9,7 @@ import org.parceler.Parcel;
 public class SunCycleColorHandler {
 
     private static final int TWILIGHT_TRANSITION_DURATION = 90; // Twilight transition duration in minutes [0, 1440[
-    private static final float TWILIGHT_TRANSITION_DISTANCE =
+    static final float TWILIGHT_TRANSITION_DISTANCE =
             (TWILIGHT_TRANSITION_DURATION / 60f) / 24f; // Twilight transition distance in [0, 1]
 
     private static final SunCycleColorWrapper colorFilterBase = new SunCycleColorWrapper(0, 255, 130, 0);
@@ -34,13 +34,9 @@ public class SunCycleColorHandler {
         return getOverlayColor().getColor();
     }
 
-    /** Takes a SunCycle and gives the appropriate color in the cycle */
-    public int getOverlayColor (SunCycle sunCycle) {
-        float positionHorizontal = sunCycle.getSunPositionHorizontal();
-        float sunrise = sunCycle.getSunrisePositionHorizontal();
-        float sunset = sunCycle.getSunsetPositionHorizontal();
-
-        SunCycleColorWrapper sunCycleColorWrapper = getOverlayColor();
+    /** Takes the maximum overlay color and the positions [0, 1] of a sun cycle, and gives the color in the cycle */
+    public static int getOverlayColor (int overlayColorMax, float positionHorizontal, float sunrise, float sunset) {
+        int alpha = overlayColorMax >>> 24;
 
         // Scale the alpha of the color if we are under twilight
         if(positionHorizontal <= sunrise || positionHorizontal >= sunset) {
@@ -49,12 +45,33 @@ public class SunCycleColorHandler {
             // Calculate alpha based on distance to twilight
             float colorAlphaScale = Math.min((minVerticalDistanceFromTwilight / TWILIGHT_TRANSITION_DISTANCE), 1.0f);
 
-            sunCycleColorWrapper.setAlpha((int) (sunCycleColorWrapper.getAlpha() * colorAlphaScale));
+            alpha = (int) (alpha * colorAlphaScale);
         } else {
-            sunCycleColorWrapper.setAlpha(0);
+            alpha = 0;
         }
 
-        return sunCycleColorWrapper.getColor();
+        return (alpha << 24) | (overlayColorMax & 0x00FFFFFF);
+    }
+
+    /**
+     * Fills an array with the colors in the cycle at the first count positions [0, 1] of another
+     * array, like getOverlayColor. The loop has no branches besides the ternaries, so that the JIT
+     * can vectorize it. Does not allocate.
+     */
+    public static void getOverlayColors(int overlayColorMax, float[] positions, float sunrise, float sunset,
+                                        int[] colors, int count) {
+        int alphaMax = overlayColorMax >>> 24;
+        int rgb = overlayColorMax & 0x00FFFFFF;
+
+        for(int i = 0; i < count; i++) {
+            float position = positions[i];
+            float distanceFromTwilight = Math.min(Math.abs(sunrise - position), Math.abs(sunset - position));
+            float colorAlphaScale = Math.min(distanceFromTwilight / TWILIGHT_TRANSITION_DISTANCE, 1.0f);
+
+            // The day between the twilights has no overlay
+            int alpha = (position <= sunrise || position >= sunset) ? (int) (alphaMax * colorAlphaScale) : 0;
+            colors[i] = (alpha << 24) | rgb;
+        }
     }
 
     /** Returns the interpolated color of the temperature and the brightness based on their intensities */
@@ -0,0 +1,104 @@
+package co.adrianblan.lightly.suncycle;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An immutable value of the color settings, together with all colors that are derived from them.
+ *
+ * The derived colors are looked up in SunCycleColorTable, which is generated at build time from
+ * SunCycleColorHandler, so that no color math has to run on the device.
+ *
+ * Since there are only a few possible combinations of intensities, every combination is created at
+ * most once and then shared. Settings can therefore be published and read from any thread without
+ * locks, and the derived colors are never calculated twice.
+ */
+public final class SunCycleColorSettings {
+
+    public static final int INTENSITY_MAX = 100;
+
+    private static final AtomicReferenceArray<SunCycleColorSettings> sharedSettings =
+            new AtomicReferenceArray<>((INTENSITY_MAX + 1) * (INTENSITY_MAX + 1));
+
+    private final int colorFilterIntensity;
+    private final int brightnessFilterIntensity;
+
+    private final int colorFilterColor;
+    private final int brightnessFilterColor;
+    private final int overlayColorMax;
+    private final int colorTemperature;
+    private final int brightnessPercent;
+
+    private SunCycleColorSettings(int colorFilterIntensity, int brightnessFilterIntensity) {
+        this.colorFilterIntensity = colorFilterIntensity;
+        this.brightnessFilterIntensity = brightnessFilterIntensity;
+
+        colorFilterColor = SunCycleColorTable.getColorFilterColor(colorFilterIntensity);
+        brightnessFilterColor = SunCycleColorTable.getBrightnessFilterColor(brightnessFilterIntensity);
+        overlayColorMax = SunCycleColorTable.getOverlayColorMax(colorFilterIntensity, brightnessFilterIntensity);
+        colorTemperature = SunCycleColorTable.getColorTemperature(colorFilterIntensity);
+        brightnessPercent = SunCycleColorTable.getBrightnessPercent(brightnessFilterIntensity);
+    }
+
+    /** Returns the shared settings for the intensities, which are in [0, 100] */
+    public static SunCycleColorSettings of(int colorFilterIntensity, int brightnessFilterIntensity) {
+
+        if(colorFilterIntensity < 0 || colorFilterIntensity > INTENSITY_MAX
+                || brightnessFilterIntensity < 0 || brightnessFilterIntensity > INTENSITY_MAX) {
+            throw new IllegalArgumentException("Intensities must be in [0, " + INTENSITY_MAX + "]");
+        }
+
+        int index = colorFilterIntensity * (INTENSITY_MAX + 1) + brightnessFilterIntensity;
+        SunCycleColorSettings settings = sharedSettings.get(index);
+
+        if(settings == null) {
+
+            // If another thread got here first, we use their settings instead
+            sharedSettings.compareAndSet(index, null,
+                    new SunCycleColorSettings(colorFilterIntensity, brightnessFilterIntensity));
+            settings = sharedSettings.get(index);
+        }
+
+        return settings;
+    }
+
+    public SunCycleColorSettings withColorFilterIntensity(int colorFilterIntensity) {
+        return of(colorFilterIntensity, brightnessFilterIntensity);
+    }
+
+    public SunCycleColorSettings withBrightnessFilterIntensity(int brightnessFilterIntensity) {
+        return of(colorFilterIntensity, brightnessFilterIntensity);
+    }
+
+    public int getColorFilterIntensity() {
+        return colorFilterIntensity;
+    }
+
+    public int getBrightnessFilterIntensity() {
+        return brightnessFilterIntensity;
+    }
+
+    /** Returns the color of the color filter */
+    public int getColorFilterColor() {
+        return colorFilterColor;
+    }
+
+    /** Returns the color of the brightness filter */
+    public int getBrightnessFilterColor() {
+        return brightnessFilterColor;
+    }
+
+    /** Returns the maximum possible prominent color */
+    public int getOverlayColorMax() {
+        return overlayColorMax;
+    }
+
+    /** Returns the color temperature of the color filter, rounded to nearest 100 */
+    public int getColorTemperature() {
+        return colorTemperature;
+    }
+
+    /** Returns the brightness percent, rounded to nearest 5 */
+    public int getBrightnessPercent() {
+        return brightnessPercent;
+    }
+}
@@ -1,11 +1,12 @@
 package co.adrianblan.lightly.suncycle;
 
-import android.graphics.Color;
-
 import org.parceler.Parcel;
 
 /**
  * Class which wraps the color data for Color
+ *
+ * The components are packed and unpacked like android.graphics.Color, but without depending on
+ * it, so that the color math can also run at build time.
  */
 @Parcel
 public class SunCycleColorWrapper {
@@ -22,10 +23,10 @@ public class SunCycleColorWrapper {
     }
 
     public SunCycleColorWrapper(int color) {
-        this.alpha = Color.alpha(color);
-        this.red = Color.red(color);
-        this.blue = Color.blue(color);
-        this.green = Color.green(color);
+        this.alpha = color >>> 24;
+        this.red = (color >> 16) & 0xFF;
+        this.blue = color & 0xFF;
+        this.green = (color >> 8) & 0xFF;
     }
 
     public SunCycleColorWrapper(int alpha, int red, int green, int blue) {
@@ -42,9 +43,9 @@ public class SunCycleColorWrapper {
         this.green = color.getGreen();
     }
 
-    /** Converts the individual components to int with Color.argb() */
+    /** Converts the individual components to int, like Color.argb() */
     public int getColor() {
-        return Color.argb(alpha, red, green, blue);
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
     }
 
     public int getAlpha() {
@@ -0,0 +1,58 @@
+package co.adrianblan.lightly.suncycle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates the schedule which follows a sun cycle.
+ *
+ * The filters are at full strength during the night, and fade out linearly during the twilight
+ * transition before sunrise, and fade in during the twilight transition after sunset. Sunrise is
+ * assumed to be before sunset, as in SunCycle.
+ */
+public class SunCycleScheduleGenerator implements FilterScheduleGenerator {
+
+    private final float sunrisePositionHorizontal;
+    private final float sunsetPositionHorizontal;
+    private final float transitionDistance;
+
+    public SunCycleScheduleGenerator(SunCycle sunCycle) {
+        this(sunCycle.getSunrisePositionHorizontal(), sunCycle.getSunsetPositionHorizontal(),
+                SunCycleColorHandler.TWILIGHT_TRANSITION_DISTANCE);
+    }
+
+    /** Creates a generator from sunrise and sunset positions [0, 1] and a transition distance [0, 1] */
+    public SunCycleScheduleGenerator(float sunrisePositionHorizontal, float sunsetPositionHorizontal,
+                                     float transitionDistance) {
+        this.sunrisePositionHorizontal = sunrisePositionHorizontal;
+        this.sunsetPositionHorizontal = sunsetPositionHorizontal;
+        this.transitionDistance = transitionDistance;
+    }
+
+    @Override
+    public FilterSchedule generate() {
+        List<FilterKeyframe> keyframes = new ArrayList<>();
+
+        // Morning, where the transition might already have started at midnight
+        if(sunrisePositionHorizontal - transitionDistance > 0f) {
+            keyframes.add(new FilterKeyframe(0f, 1f));
+            keyframes.add(new FilterKeyframe(sunrisePositionHorizontal - transitionDistance, 1f));
+        } else {
+            keyframes.add(new FilterKeyframe(0f, sunrisePositionHorizontal / transitionDistance));
+        }
+
+        // Day
+        keyframes.add(new FilterKeyframe(sunrisePositionHorizontal, 0f));
+        keyframes.add(new FilterKeyframe(sunsetPositionHorizontal, 0f));
+
+        // Evening, where the transition might not have ended at midnight
+        if(sunsetPositionHorizontal + transitionDistance < 1f) {
+            keyframes.add(new FilterKeyframe(sunsetPositionHorizontal + transitionDistance, 1f));
+            keyframes.add(new FilterKeyframe(1f, 1f));
+        } else {
+            keyframes.add(new FilterKeyframe(1f, (1f - sunsetPositionHorizontal) / transitionDistance));
+        }
+
+        return new FilterSchedule(keyframes);
+    }
+}
@@ -0,0 +1,95 @@
+package co.adrianblan.lightly.suncycle;
+
+/**
+ * Calculates the times of the civil twilight of a day at a position, without any network.
+ *
+ * Uses the sunrise equation with the approximations of the NOAA, which is accurate to about a
+ * minute away from the poles. The civil twilight begins and ends when the center of the sun is
+ * six degrees below the horizon, which is the same as the data of api.sunrise-sunset.org.
+ *
+ * Only depends on the JDK, so that the build can also use it to precompute twilight tables.
+ */
+public final class TwilightCalculator {
+
+    /** The twilight begins and ends on the day */
+    public static final int TWILIGHT = 0;
+
+    /** The sun never sets below the civil twilight */
+    public static final int NO_NIGHT = 1;
+
+    /** The sun never rises above the civil twilight */
+    public static final int NO_DAY = 2;
+
+    /** The altitude of the sun in degrees at the beginning and end of the civil twilight */
+    public static final double CIVIL_TWILIGHT_ALTITUDE = -6.0;
+
+    public static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    // Julian dates of the unix epoch and of the epoch J2000
+    private static final double JULIAN_DATE_UNIX_EPOCH = 2440587.5;
+    private static final double JULIAN_DATE_J2000 = 2451545.0;
+
+    private static final double EARTH_AXIAL_TILT = 23.44;
+
+    private TwilightCalculator() {}
+
+    /**
+     * Calculates the civil twilight of the day which starts at a time, for a position in degrees.
+     *
+     * The begin and end of the twilight are written to the first two times, in milliseconds. Days
+     * without a night get the start and end of the day, and days without a day get the solar noon
+     * for both. Returns TWILIGHT, NO_NIGHT or NO_DAY. Does not allocate.
+     */
+    public static int getTwilight(long dayStartMillis, double latitude, double longitude, long[] times) {
+
+        // The solar noon of the day at this longitude, as a Julian date
+        double daysSinceJ2000 = Math.round(toJulianDate(dayStartMillis + MILLIS_PER_DAY / 2) - JULIAN_DATE_J2000);
+        double meanSolarNoon = daysSinceJ2000 - longitude / 360.0;
+
+        double meanAnomaly = normalizeDegrees(357.5291 + 0.98560028 * meanSolarNoon);
+        double center = 1.9148 * sinDegrees(meanAnomaly) + 0.02 * sinDegrees(2 * meanAnomaly)
+                + 0.0003 * sinDegrees(3 * meanAnomaly);
+        double eclipticLongitude = normalizeDegrees(meanAnomaly + center + 180.0 + 102.9372);
+
+        double solarTransit = JULIAN_DATE_J2000 + meanSolarNoon + 0.0053 * sinDegrees(meanAnomaly)
+                - 0.0069 * sinDegrees(2 * eclipticLongitude);
+
+        double declinationSine = sinDegrees(eclipticLongitude) * sinDegrees(EARTH_AXIAL_TILT);
+        double declinationCosine = Math.cos(Math.asin(declinationSine));
+
+        double hourAngleCosine = (sinDegrees(CIVIL_TWILIGHT_ALTITUDE) - sinDegrees(latitude) * declinationSine)
+                / (Math.cos(Math.toRadians(latitude)) * declinationCosine);
+
+        if(hourAngleCosine < -1.0) {
+            times[0] = dayStartMillis;
+            times[1] = dayStartMillis + MILLIS_PER_DAY;
+            return NO_NIGHT;
+        } else if(hourAngleCosine > 1.0) {
+            times[0] = toMillis(solarTransit);
+            times[1] = times[0];
+            return NO_DAY;
+        }
+
+        double hourAngle = Math.toDegrees(Math.acos(hourAngleCosine));
+
+        times[0] = toMillis(solarTransit - hourAngle / 360.0);
+        times[1] = toMillis(solarTransit + hourAngle / 360.0);
+        return TWILIGHT;
+    }
+
+    private static double toJulianDate(long timeMillis) {
+        return timeMillis / (double) MILLIS_PER_DAY + JULIAN_DATE_UNIX_EPOCH;
+    }
+
+    private static long toMillis(double julianDate) {
+        return Math.round((julianDate - JULIAN_DATE_UNIX_EPOCH) * MILLIS_PER_DAY);
+    }
+
+    private static double sinDegrees(double degrees) {
+        return Math.sin(Math.toRadians(degrees));
+    }
+
+    private static double normalizeDegrees(double degrees) {
+        return ((degrees % 360.0) + 360.0) % 360.0;
+    }
+}
@@ -0,0 +1,144 @@
+package co.adrianblan.lightly.suncycle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a table of precomputed civil twilights for many locations and every day of the year, which
+ * is generated at build time by TwilightTableGenerator.
+ *
+ * The table is read straight from its buffer, which is usually memory mapped. All values are big
+ * endian, and the layout is
+ *
+ *   header     magic, version, location count, day count, offset of the records (5 ints)
+ *   locations  latitude and longitude in hundredths of a degree (2 shorts), offset of the record (int)
+ *   records    the minutes of the twilight begin and end of every day, delta encoded in nibbles
+ *
+ * The minutes are counted from the mean solar midnight at the longitude of the location, so that
+ * they stay within [0, 1440] for any time zone. Days without a night are stored as 0 and 1440, and
+ * days without a day as the solar noon for both. The days are the days of the leap year 2016, where
+ * other years are at most a day off, which moves the twilights by a few minutes.
+ *
+ * Each value of a record is the difference from the previous value of the same kind in one nibble,
+ * which holds [-7, 7] since the twilights move a few minutes per day. Larger differences, and the
+ * first values, are escaped with the nibble 8 and followed by the value itself in four nibbles.
+ */
+public final class TwilightTable {
+
+    public static final int MAGIC = 0x4C54574C; // "LTWL"
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 5 * 4;
+    public static final int LOCATION_SIZE = 2 + 2 + 4;
+
+    /** The coordinates are stored as shorts in units of one over this, about a kilometer */
+    public static final int COORDINATE_SCALE = 100;
+
+    public static final int DAYS_PER_YEAR = 366;
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    /** The start of the year whose days are in the table */
+    public static final long YEAR_START_MILLIS = 1451606400000L; // 2016-01-01 UTC
+
+    public static final int ESCAPE_NIBBLE = 0x8;
+    public static final int MAX_NIBBLE_DELTA = 7;
+
+    private final ByteBuffer buffer;
+    private final int locationCount;
+    private final int dayCount;
+    private final int recordsOffset;
+
+    /** Creates a table which reads from the buffer, which must hold the whole table */
+    public TwilightTable(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a twilight table");
+        }
+
+        if(buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported twilight table version " + buffer.getInt(4));
+        }
+
+        locationCount = buffer.getInt(8);
+        dayCount = buffer.getInt(12);
+        recordsOffset = buffer.getInt(16);
+
+        if(recordsOffset != HEADER_SIZE + locationCount * LOCATION_SIZE || recordsOffset > buffer.capacity()) {
+            throw new IOException("Corrupt twilight table");
+        }
+    }
+
+    public int size() {
+        return locationCount;
+    }
+
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    public float getLatitude(int location) {
+        return buffer.getShort(HEADER_SIZE + location * LOCATION_SIZE) / (float) COORDINATE_SCALE;
+    }
+
+    public float getLongitude(int location) {
+        return buffer.getShort(HEADER_SIZE + location * LOCATION_SIZE + 2) / (float) COORDINATE_SCALE;
+    }
+
+    /**
+     * Returns the twilight of a location on a day [0, day count[ of the year, with the minutes of
+     * the begin and end packed into one int. Decodes the record up to the day, and does not allocate.
+     */
+    public int getTwilight(int location, int day) {
+        int nibbleOffset = 2 * (recordsOffset + buffer.getInt(HEADER_SIZE + location * LOCATION_SIZE + 4));
+        int begin = 0;
+        int end = 0;
+
+        for(int i = 0; i <= day; i++) {
+            int nibble = getNibble(nibbleOffset++);
+
+            if(nibble == ESCAPE_NIBBLE) {
+                begin = getEscapedValue(nibbleOffset);
+                nibbleOffset += 4;
+            } else {
+                begin += (nibble << 28) >> 28;
+            }
+
+            nibble = getNibble(nibbleOffset++);
+
+            if(nibble == ESCAPE_NIBBLE) {
+                end = getEscapedValue(nibbleOffset);
+                nibbleOffset += 4;
+            } else {
+                end += (nibble << 28) >> 28;
+            }
+        }
+
+        return (begin << 16) | end;
+    }
+
+    /** Returns the minutes from the mean solar midnight to the begin of a packed twilight */
+    public static int getBeginMinutes(int twilight) {
+        return twilight >>> 16;
+    }
+
+    /** Returns the minutes from the mean solar midnight to the end of a packed twilight */
+    public static int getEndMinutes(int twilight) {
+        return twilight & 0xFFFF;
+    }
+
+    /** Returns the mean solar midnight at a longitude in degrees, of the day which starts at a UTC midnight */
+    public static long getMeanMidnightMillis(long utcMidnightMillis, double longitude) {
+        return utcMidnightMillis - Math.round(longitude / 360.0 * TwilightCalculator.MILLIS_PER_DAY);
+    }
+
+    private int getNibble(int nibbleOffset) {
+        int value = buffer.get(nibbleOffset >> 1);
+        return (nibbleOffset & 1) == 0 ? (value >> 4) & 0xF : value & 0xF;
+    }
+
+    private int getEscapedValue(int nibbleOffset) {
+        return (short) ((getNibble(nibbleOffset) << 12) | (getNibble(nibbleOffset + 1) << 8)
+                | (getNibble(nibbleOffset + 2) << 4) | getNibble(nibbleOffset + 3));
+    }
+}
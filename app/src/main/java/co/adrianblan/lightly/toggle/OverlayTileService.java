@@ -0,0 +1,38 @@
+package co.adrianblan.lightly.toggle;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.service.quicksettings.Tile;
+import android.service.quicksettings.TileService;
+
+/**
+ * A Quick Settings tile which toggles the overlay.
+ */
+@TargetApi(Build.VERSION_CODES.N)
+public class OverlayTileService extends TileService {
+
+    @Override
+    public void onStartListening() {
+        super.onStartListening();
+        updateTile();
+    }
+
+    @Override
+    public void onClick() {
+        super.onClick();
+
+        new OverlayToggleHandler(this).toggle();
+        updateTile();
+    }
+
+    /** Updates the state of the tile to match whether the overlay is active */
+    private void updateTile() {
+        Tile tile = getQsTile();
+
+        if(tile != null) {
+            boolean isOverlayActive = new OverlayToggleHandler(this).isOverlayActive();
+            tile.setState(isOverlayActive ? Tile.STATE_ACTIVE : Tile.STATE_INACTIVE);
+            tile.updateTile();
+        }
+    }
+}
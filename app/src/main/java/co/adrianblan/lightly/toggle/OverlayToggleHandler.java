@@ -0,0 +1,80 @@
+package co.adrianblan.lightly.toggle;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.service.quicksettings.TileService;
+
+import co.adrianblan.lightly.helpers.PermissionHandler;
+import co.adrianblan.lightly.service.OverlayService;
+import co.adrianblan.lightly.service.OverlayStateHandler;
+import co.adrianblan.lightly.service.OverlayUpdateSequence;
+
+/**
+ * Handles toggling the overlay from outside of the main screen, such as from a Quick Settings tile
+ * or a home screen widget.
+ *
+ * Toggling talks to the OverlayService directly, which restores the overlay from its stored state.
+ * The main screen is only opened if there is no stored state to restore from yet.
+ */
+public class OverlayToggleHandler {
+
+    private final Context context;
+    private final OverlayStateHandler overlayStateHandler;
+
+    public OverlayToggleHandler(Context context) {
+        this.context = context.getApplicationContext();
+        this.overlayStateHandler = new OverlayStateHandler(this.context);
+    }
+
+    /** Returns whether the overlay is currently active */
+    public boolean isOverlayActive() {
+        return overlayStateHandler.isActive();
+    }
+
+    /** Turns the overlay off if it is active, otherwise restores it */
+    public void toggle() {
+        Intent overlayIntent = new Intent(context, OverlayService.class);
+        OverlayStateHandler.State state = overlayStateHandler.getState();
+
+        if(state.isActive()) {
+            context.stopService(overlayIntent);
+            overlayStateHandler.setActive(false);
+
+        } else if(state.hasSunCycle()
+                && new PermissionHandler().hasDrawOverlayPermission(context)) {
+
+            overlayIntent.setAction(OverlayService.ACTION_RESTORE);
+            context.startService(OverlayUpdateSequence.tag(overlayIntent));
+            overlayStateHandler.setActive(true);
+
+        } else {
+
+            // We have nothing to restore, or need permission, so the user has to set things up
+            Intent mainIntent = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+            mainIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            context.startActivity(mainIntent);
+            return;
+        }
+
+        updateToggles();
+    }
+
+    /** Updates all widgets and tiles so that they show whether the overlay is active */
+    public void updateToggles() {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        ComponentName widgetComponent = new ComponentName(context, OverlayWidgetProvider.class);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(widgetComponent);
+
+        if(appWidgetIds.length > 0) {
+            appWidgetManager.updateAppWidget(appWidgetIds,
+                    OverlayWidgetProvider.getRemoteViews(context, isOverlayActive()));
+        }
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            TileService.requestListeningState(context, new ComponentName(context, OverlayTileService.class));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package co.adrianblan.lightly.toggle;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.Context;
+import android.content.Intent;
+import android.widget.RemoteViews;
+
+import co.adrianblan.lightly.R;
+import co.adrianblan.lightly.helpers.Constants;
+
+/**
+ * A home screen widget which toggles the overlay.
+ */
+public class OverlayWidgetProvider extends AppWidgetProvider {
+
+    public static final String ACTION_TOGGLE = "co.adrianblan.lightly.action.TOGGLE_OVERLAY";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if(ACTION_TOGGLE.equals(intent.getAction())) {
+            new OverlayToggleHandler(context).toggle();
+        } else {
+            super.onReceive(context, intent);
+        }
+    }
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        boolean isOverlayActive = new OverlayToggleHandler(context).isOverlayActive();
+        appWidgetManager.updateAppWidget(appWidgetIds, getRemoteViews(context, isOverlayActive));
+    }
+
+    /** Returns the views of the widget, which toggle the overlay when clicked */
+    public static RemoteViews getRemoteViews(Context context, boolean isOverlayActive) {
+        RemoteViews remoteViews = new RemoteViews(context.getPackageName(), R.layout.widget_overlay_toggle);
+
+        remoteViews.setImageViewResource(R.id.widget_overlay_toggle_icon, isOverlayActive ?
+                R.drawable.ic_brightness_low_white_24dp : R.drawable.ic_brightness_high_white_24dp);
+
+        Intent toggleIntent = new Intent(context, OverlayWidgetProvider.class);
+        toggleIntent.setAction(ACTION_TOGGLE);
+        PendingIntent togglePendingIntent = PendingIntent.getBroadcast(context,
+                Constants.WIDGET_TOGGLE_REQUEST_CODE, toggleIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        remoteViews.setOnClickPendingIntent(R.id.widget_overlay_toggle_icon, togglePendingIntent);
+        return remoteViews;
+    }
+}
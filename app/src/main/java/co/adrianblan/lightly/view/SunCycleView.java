@@ -5,7 +5,6 @@ import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.ColorFilter;
 import android.graphics.LinearGradient;
 import android.graphics.Paint;
 import android.graphics.Path;
@@ -20,6 +19,7 @@ import android.view.View;
 import java.util.ArrayList;
 
 import co.adrianblan.lightly.R;
+import co.adrianblan.lightly.helpers.Tracer;
 import co.adrianblan.lightly.helpers.Utils;
 import co.adrianblan.lightly.suncycle.SunCycle;
 import co.adrianblan.lightly.suncycle.SunCycleColorHandler;
@@ -47,6 +47,11 @@ public class SunCycleView extends View {
     private int canvasHeight;
 
     private Path sunPath;
+    private float[] sunPathHeights;
+
+    // The gradient is only recreated when its height or colors change
+    private int sunPathShaderHeight;
+    private int sunPathShaderNightColor;
 
     private Paint sunPathPaint;
     private Paint sunCirclePaint;
@@ -94,6 +99,7 @@ public class SunCycleView extends View {
         }
 
         sunPath = new Path();
+        sunPathHeights = new float[PATH_ITERATIONS + 1];
 
         sunPathPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         sunPathPaint.setColor(accentColor);
@@ -104,6 +110,9 @@ public class SunCycleView extends View {
         sunCirclePaint.setColor(accentColor);
         sunCirclePaint.setStrokeWidth(Utils.convertDpToPixels(4));
 
+        // Tint sun drawable
+        sunCirclePaint.setColorFilter(new PorterDuffColorFilter(accentColor, PorterDuff.Mode.SRC_IN));
+
         twilightDividerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         twilightDividerPaint.setColor(Color.LTGRAY);
         twilightDividerPaint.setStrokeWidth(Utils.convertDpToPixels(1.6f));
@@ -113,23 +122,36 @@ public class SunCycleView extends View {
      * Calculates PATH_ITERATIONS number of discrete points on the curve of the path.
      */
     private void calculatePath() {
+        Tracer.beginSection("SunCycleView.calculatePath");
+        try {
+            // Gradient that goes from the accentcolor, to the darkest cycle color to signify filters
+            if(sunPathPaint.getShader() == null || sunPathShaderHeight != getHeight()
+                    || sunPathShaderNightColor != nightColor) {
+                sunPathShaderHeight = getHeight();
+                sunPathShaderNightColor = nightColor;
+                sunPathPaint.setShader(new LinearGradient(0, PATH_HEIGHT_SCALE * -getHeight() / 2, 0, PATH_HEIGHT_SCALE * getHeight() / 2, accentColor,
+                        SunCycleColorHandler.interpolateWithPriority(accentColor, nightColor, 8), Shader.TileMode.MIRROR));
+            }
 
-        // Gradient that goes from the accentcolor, to the darkest cycle color to signify filters
-        sunPathPaint.setShader(new LinearGradient(0, PATH_HEIGHT_SCALE * -getHeight() / 2, 0, PATH_HEIGHT_SCALE * getHeight() / 2, accentColor,
-                SunCycleColorHandler.interpolateWithPriority(accentColor, nightColor, 8), Shader.TileMode.MIRROR));
+            sunPath.reset();
 
-        sunPath.reset();
+            // All heights of the path are calculated at once
+            SunCycle.getVerticalPositions(0f, 1f / PATH_ITERATIONS, cycleOffsetHorizontal,
+                    sunPathHeights, sunPathHeights.length);
 
-        // Initial point of the path
-        sunPath.moveTo(0, -SunCycle.getVerticalPosition(0f, cycleOffsetHorizontal) * PATH_HEIGHT_SCALE * canvasHeight / 2);
+            // Initial point of the path
+            sunPath.moveTo(0, -sunPathHeights[0] * PATH_HEIGHT_SCALE * canvasHeight / 2);
 
-        for(int i = 0; i <= PATH_ITERATIONS; i++) {
+            for(int i = 0; i <= PATH_ITERATIONS; i++) {
 
-            float percent = (float) i / PATH_ITERATIONS;
+                float percent = (float) i / PATH_ITERATIONS;
 
-            float pathY = -SunCycle.getVerticalPosition(percent, cycleOffsetHorizontal) * PATH_HEIGHT_SCALE * canvasHeight / 2;
+                float pathY = -sunPathHeights[i] * PATH_HEIGHT_SCALE * canvasHeight / 2;
 
-            sunPath.lineTo(percent * canvasWidth, pathY );
+                sunPath.lineTo(percent * canvasWidth, pathY );
+            }
+        } finally {
+            Tracer.endSection();
         }
     }
 
@@ -253,10 +275,6 @@ public class SunCycleView extends View {
             Drawable sunDrawable = getSunDrawableInCycle(sunDrawables, cycleOffsetHorizontal, sunPositionHorizontal);
             Bitmap sunBitmap = ((BitmapDrawable) sunDrawable).getBitmap();
 
-            // Tint sun drawable
-            ColorFilter sunIconColorFilter = new PorterDuffColorFilter(accentColor, PorterDuff.Mode.SRC_IN);
-            sunCirclePaint.setColorFilter(sunIconColorFilter);
-
             // Draw the sun drawable on the cycle
             canvas.drawBitmap(sunBitmap, sunPositionHorizontal * canvasWidth - (sunBitmap.getWidth() / 2f), sunY - (sunBitmap.getHeight() / 2f), sunCirclePaint);
         } else {
@@ -0,0 +1,205 @@
+package co.adrianblan.lightly.ambient;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the brightness adapts to the ambient light, with samples from a fake light sensor.
+ */
+public class AdaptiveBrightnessHandlerTest {
+
+    private static final int BRIGHTNESS_FILTER_INTENSITY = 40;
+
+    // Samples arrive in batches with one sample per second, like the light sensor on KitKat and later
+    private static final long SAMPLE_INTERVAL_MILLIS = 1000;
+
+    // How long after a request the handler is updated, like the timer of the service
+    private static final long UPDATE_DELAY_MILLIS = 5000;
+
+    private FakeAmbientLightSource ambientLightSource;
+    private AdaptiveBrightnessHandler adaptiveBrightnessHandler;
+    private int levelChanges;
+    private boolean isUpdateRequested;
+
+    /** Delivers the samples that the test gives it, as long as it is started */
+    static class FakeAmbientLightSource implements AmbientLightSource {
+
+        boolean hasSensor = true;
+        Listener listener;
+        long timeMillis;
+
+        @Override
+        public boolean start(Listener listener) {
+            if(!hasSensor) {
+                return false;
+            }
+
+            this.listener = listener;
+            return true;
+        }
+
+        @Override
+        public void stop() {
+            listener = null;
+        }
+
+        @Override
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        /** Delivers the same lux once per sample interval, for a duration in milliseconds */
+        void deliver(float lux, long durationMillis) {
+            for(long end = timeMillis + durationMillis; timeMillis < end; timeMillis += SAMPLE_INTERVAL_MILLIS) {
+                if(listener != null) {
+                    listener.onAmbientLight(lux, timeMillis);
+                }
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        ambientLightSource = new FakeAmbientLightSource();
+        adaptiveBrightnessHandler = new AdaptiveBrightnessHandler(ambientLightSource, new AmbientLightFilter(),
+                new AdaptiveBrightnessHandler.Listener() {
+                    @Override
+                    public void onAmbientLightLevelChanged() {
+                        levelChanges++;
+                    }
+
+                    @Override
+                    public void onAmbientLightSettling() {
+                        isUpdateRequested = true;
+                    }
+                });
+    }
+
+    @Test
+    public void darkRoomKeepsTheChosenBrightness() {
+        adaptiveBrightnessHandler.start();
+        ambientLightSource.deliver(2f, 60 * 1000);
+
+        assertEquals(BRIGHTNESS_FILTER_INTENSITY, getIntensity());
+        assertEquals(1, levelChanges);
+    }
+
+    @Test
+    public void brightLightRemovesTheDimming() {
+        adaptiveBrightnessHandler.start();
+        ambientLightSource.deliver(2f, 60 * 1000);
+        ambientLightSource.deliver(5000f, 5 * 60 * 1000);
+
+        assertEquals(100, getIntensity());
+    }
+
+    @Test
+    public void shortFlashIsSmoothedAway() {
+        adaptiveBrightnessHandler.start();
+        ambientLightSource.deliver(2f, 60 * 1000);
+        ambientLightSource.deliver(300f, 1000);
+        ambientLightSource.deliver(2f, 60 * 1000);
+
+        assertEquals(BRIGHTNESS_FILTER_INTENSITY, getIntensity());
+        assertEquals(1, levelChanges);
+    }
+
+    @Test
+    public void heldLightIsSmoothedIn() {
+        adaptiveBrightnessHandler.start();
+
+        // Like the light sensor, which only reports when the light changes
+        ambientLightSource.deliver(2f, SAMPLE_INTERVAL_MILLIS);
+        waitWithoutSamples(60 * 1000);
+        ambientLightSource.deliver(5000f, SAMPLE_INTERVAL_MILLIS);
+        waitWithoutSamples(60 * 1000);
+
+        assertEquals(100, getIntensity());
+        assertFalse("Updates should stop once the light has settled", isUpdateRequested);
+    }
+
+    @Test
+    public void heldDarknessIsSmoothedIn() {
+        adaptiveBrightnessHandler.start();
+        ambientLightSource.deliver(5000f, SAMPLE_INTERVAL_MILLIS);
+        waitWithoutSamples(60 * 1000);
+        ambientLightSource.deliver(2f, SAMPLE_INTERVAL_MILLIS);
+        waitWithoutSamples(5 * 60 * 1000);
+
+        assertEquals(BRIGHTNESS_FILTER_INTENSITY, getIntensity());
+        assertFalse("Updates should stop once the light has settled", isUpdateRequested);
+    }
+
+    @Test
+    public void lightAroundThresholdDoesNotFlicker() {
+        adaptiveBrightnessHandler.start();
+        ambientLightSource.deliver(50f, 5 * 60 * 1000);
+        int changesBefore = levelChanges;
+
+        // Hover above and below the threshold of 50 lux, within the hysteresis
+        for(int i = 0; i < 100; i++) {
+            ambientLightSource.deliver(i % 2 == 0 ? 58f : 42f, 30 * 1000);
+        }
+
+        assertEquals(changesBefore, levelChanges);
+    }
+
+    @Test
+    public void intensityIncreasesWithTheLight() {
+        adaptiveBrightnessHandler.start();
+        int previousIntensity = -1;
+
+        for(float lux : new float[] {1f, 20f, 100f, 500f, 2000f}) {
+            ambientLightSource.deliver(lux, 5 * 60 * 1000);
+            int intensity = getIntensity();
+
+            assertTrue("Intensity " + intensity + " at " + lux + " lux", intensity > previousIntensity);
+            previousIntensity = intensity;
+        }
+    }
+
+    @Test
+    public void stopForgetsTheLight() {
+        adaptiveBrightnessHandler.start();
+        ambientLightSource.deliver(5000f, 60 * 1000);
+        adaptiveBrightnessHandler.stop();
+
+        assertFalse(adaptiveBrightnessHandler.isStarted());
+        assertEquals(BRIGHTNESS_FILTER_INTENSITY, getIntensity());
+    }
+
+    @Test
+    public void missingSensorKeepsTheChosenBrightness() {
+        ambientLightSource.hasSensor = false;
+        adaptiveBrightnessHandler.start();
+        ambientLightSource.deliver(5000f, 60 * 1000);
+
+        assertFalse(adaptiveBrightnessHandler.isStarted());
+        assertEquals(BRIGHTNESS_FILTER_INTENSITY, getIntensity());
+        assertEquals(0, levelChanges);
+    }
+
+    /** Lets time pass without any samples, updating the handler whenever it asks for it */
+    private void waitWithoutSamples(long durationMillis) {
+        long end = ambientLightSource.timeMillis + durationMillis;
+
+        while(ambientLightSource.timeMillis + UPDATE_DELAY_MILLIS <= end) {
+            ambientLightSource.timeMillis += UPDATE_DELAY_MILLIS;
+
+            if(isUpdateRequested) {
+                isUpdateRequested = false;
+                adaptiveBrightnessHandler.update();
+            }
+        }
+
+        ambientLightSource.timeMillis = end;
+    }
+
+    private int getIntensity() {
+        return adaptiveBrightnessHandler.getBrightnessFilterIntensity(BRIGHTNESS_FILTER_INTENSITY);
+    }
+}
@@ -0,0 +1,105 @@
+package co.adrianblan.lightly.location;
+
+import android.Manifest;
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowLocationManager;
+
+import co.adrianblan.lightly.BuildConfig;
+import co.adrianblan.lightly.data.LocationData;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that only the newest last known location is used, and only if it is recent and accurate.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PlatformLocationSourceTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+
+    private ShadowLocationManager shadowLocationManager;
+    private PlatformLocationSource platformLocationSource;
+
+    @Before
+    public void setUp() {
+        ShadowApplication.getInstance().grantPermissions(Manifest.permission.ACCESS_COARSE_LOCATION);
+
+        LocationManager locationManager =
+                (LocationManager) RuntimeEnvironment.application.getSystemService(Context.LOCATION_SERVICE);
+        shadowLocationManager = shadowOf(locationManager);
+        platformLocationSource = new PlatformLocationSource(RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void noLastKnownLocation() {
+        assertNull(platformLocationSource.getLocationData());
+    }
+
+    @Test
+    public void recentLocationIsUsed() {
+        setLastKnownLocation(LocationManager.NETWORK_PROVIDER, 59.33, 18.07, HOUR_MILLIS, 2000f);
+        LocationData locationData = platformLocationSource.getLocationData();
+
+        assertNotNull(locationData);
+        assertEquals(59.33, locationData.getLatitude(), 0.0);
+        assertEquals(18.07, locationData.getLongitude(), 0.0);
+        assertEquals(LocationData.UNKNOWN, locationData.getRegionName());
+    }
+
+    @Test
+    public void newestLocationWins() {
+        setLastKnownLocation(LocationManager.PASSIVE_PROVIDER, 59.33, 18.07, 2 * HOUR_MILLIS, 2000f);
+        setLastKnownLocation(LocationManager.NETWORK_PROVIDER, 55.60, 13.00, HOUR_MILLIS, 2000f);
+        assertEquals(55.60, platformLocationSource.getLocationData().getLatitude(), 0.0);
+
+        setLastKnownLocation(LocationManager.PASSIVE_PROVIDER, 57.71, 11.97, HOUR_MILLIS / 2, 2000f);
+        assertEquals(57.71, platformLocationSource.getLocationData().getLatitude(), 0.0);
+    }
+
+    @Test
+    public void locationOlderThanHalfADayIsStale() {
+        setLastKnownLocation(LocationManager.NETWORK_PROVIDER, 59.33, 18.07, 13 * HOUR_MILLIS, 2000f);
+        assertNull(platformLocationSource.getLocationData());
+    }
+
+    @Test
+    public void inaccurateLocationIsIgnored() {
+        setLastKnownLocation(LocationManager.NETWORK_PROVIDER, 59.33, 18.07, HOUR_MILLIS, 60 * 1000f);
+        assertNull(platformLocationSource.getLocationData());
+    }
+
+    @Test
+    public void locationWithoutAccuracyIsUsed() {
+        setLastKnownLocation(LocationManager.NETWORK_PROVIDER, 59.33, 18.07, HOUR_MILLIS, 0f);
+        assertNotNull(platformLocationSource.getLocationData());
+    }
+
+    /** Sets the last known location of a provider, from an age and an accuracy in meters where 0 is none */
+    private void setLastKnownLocation(String provider, double latitude, double longitude, long ageMillis,
+                                      float accuracyMeters) {
+        Location location = new Location(provider);
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setTime(System.currentTimeMillis() - ageMillis);
+
+        if(accuracyMeters > 0) {
+            location.setAccuracy(accuracyMeters);
+        }
+
+        shadowLocationManager.setLastKnownLocation(provider, location);
+    }
+}
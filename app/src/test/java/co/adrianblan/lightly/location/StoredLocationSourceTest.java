@@ -0,0 +1,95 @@
+package co.adrianblan.lightly.location;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+
+import co.adrianblan.lightly.BuildConfig;
+import co.adrianblan.lightly.data.LocationData;
+import co.adrianblan.lightly.network.LocationDataJsonCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that only stored locations from the last day are returned.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class StoredLocationSourceTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+
+    private SharedPreferences sharedPreferences;
+    private LocationDataJsonCodec locationDataJsonCodec;
+    private StoredLocationSource storedLocationSource;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = RuntimeEnvironment.application.getSharedPreferences("test", Context.MODE_PRIVATE);
+        locationDataJsonCodec = new LocationDataJsonCodec();
+        storedLocationSource = new StoredLocationSource(sharedPreferences, locationDataJsonCodec);
+    }
+
+    @Test
+    public void nothingStored() {
+        assertNull(storedLocationSource.getLocationData());
+    }
+
+    @Test
+    public void recentLocationIsFresh() throws IOException {
+        store(createLocationData(System.currentTimeMillis() - HOUR_MILLIS), false);
+        LocationData locationData = storedLocationSource.getLocationData();
+
+        assertNotNull(locationData);
+        assertEquals(59.33, locationData.getLatitude(), 0.0);
+        assertEquals(18.07, locationData.getLongitude(), 0.0);
+    }
+
+    @Test
+    public void locationWithinADayIsFresh() throws IOException {
+        store(createLocationData(System.currentTimeMillis() - 23 * HOUR_MILLIS), false);
+        assertNotNull(storedLocationSource.getLocationData());
+    }
+
+    @Test
+    public void locationOlderThanADayIsStale() throws IOException {
+        store(createLocationData(System.currentTimeMillis() - 25 * HOUR_MILLIS), false);
+        assertNull(storedLocationSource.getLocationData());
+    }
+
+    @Test
+    public void locationWithoutTimeIsStale() throws IOException {
+        store(createLocationData(0), false);
+        assertNull(storedLocationSource.getLocationData());
+    }
+
+    @Test
+    public void dummyLocationIsNeverUsed() throws IOException {
+        store(createLocationData(System.currentTimeMillis()), true);
+        assertNull(storedLocationSource.getLocationData());
+    }
+
+    private static LocationData createLocationData(long timeMillis) {
+        LocationData locationData = new LocationData("Stockholm", "Sweden", 59.33, 18.07);
+        locationData.setTime(timeMillis);
+        return locationData;
+    }
+
+    /** Stores the location like SunCycleRepository does */
+    private void store(LocationData locationData, boolean hasDummyData) throws IOException {
+        sharedPreferences.edit()
+                .putBoolean("hasDummyData", hasDummyData)
+                .putString("locationData", locationDataJsonCodec.toJson(locationData))
+                .commit();
+    }
+}
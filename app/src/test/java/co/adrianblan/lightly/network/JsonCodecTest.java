@@ -0,0 +1,116 @@
+package co.adrianblan.lightly.network;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+
+import co.adrianblan.lightly.BuildConfig;
+import co.adrianblan.lightly.data.LocationData;
+import co.adrianblan.lightly.data.SunriseSunsetData;
+import co.adrianblan.lightly.data.SunriseSunsetDataWrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Decodes responses of ip-api.com and api.sunrise-sunset.org and our stored data with the
+ * JsonCodecs, which run on the android.util.JsonReader of Robolectric.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class JsonCodecTest {
+
+    private final LocationDataJsonCodec locationDataJsonCodec = new LocationDataJsonCodec();
+    private final SunriseSunsetDataJsonCodec sunriseSunsetDataJsonCodec = new SunriseSunsetDataJsonCodec();
+    private final SunriseSunsetDataWrapperJsonCodec sunriseSunsetDataWrapperJsonCodec =
+            new SunriseSunsetDataWrapperJsonCodec();
+
+    @Test
+    public void locationDataSkipsUnknownAndNestedFields() throws IOException {
+        LocationData locationData = locationDataJsonCodec.fromJson("{\"status\":\"success\","
+                + "\"country\":\"Sweden\",\"countryCode\":\"SE\","
+                + "\"nested\":{\"regionName\":\"Nested\",\"values\":[1,{\"lat\":0},null,[true]]},"
+                + "\"regionName\":\"Stockholm\",\"lat\":59.33,\"lon\":18.07,\"zip\":null,"
+                + "\"tags\":[\"a\",{\"country\":\"Nested\"}],\"query\":\"192.0.2.1\"}");
+
+        assertEquals("Stockholm", locationData.getRegionName());
+        assertEquals("Sweden", locationData.getCountry());
+        assertEquals(59.33, locationData.getLatitude(), 0);
+        assertEquals(18.07, locationData.getLongitude(), 0);
+    }
+
+    @Test
+    public void locationDataReadsNullStringsAsEmpty() throws IOException {
+        LocationData locationData = locationDataJsonCodec.fromJson(
+                "{\"regionName\":null,\"country\":null,\"lat\":1.5,\"lon\":-2.5}");
+
+        assertEquals("", locationData.getRegionName());
+        assertEquals("", locationData.getCountry());
+        assertEquals(1.5, locationData.getLatitude(), 0);
+        assertEquals(-2.5, locationData.getLongitude(), 0);
+    }
+
+    @Test
+    public void locationDataWithoutTimeHasNoTime() throws IOException {
+        // The response of ip-api.com, or data that was stored before the time was
+        LocationData locationData = locationDataJsonCodec.fromJson(
+                "{\"regionName\":\"Stockholm\",\"country\":\"Sweden\",\"lat\":59.33,\"lon\":18.07}");
+
+        assertEquals(0, locationData.getTime());
+    }
+
+    @Test
+    public void storedLocationDataKeepsItsTime() throws IOException {
+        LocationData locationData = new LocationData("Malmö", "Sweden", 55.61, 13.0);
+        locationData.setTime(1461234567890L);
+
+        LocationData storedLocationData = locationDataJsonCodec.fromJson(locationDataJsonCodec.toJson(locationData));
+
+        assertEquals("Malmö", storedLocationData.getRegionName());
+        assertEquals("Sweden", storedLocationData.getCountry());
+        assertEquals(55.61, storedLocationData.getLatitude(), 0);
+        assertEquals(13.0, storedLocationData.getLongitude(), 0);
+        assertEquals(1461234567890L, storedLocationData.getTime());
+    }
+
+    @Test
+    public void sunriseSunsetDataWrapperReadsTheResults() throws IOException {
+        SunriseSunsetDataWrapper sunriseSunsetDataWrapper = sunriseSunsetDataWrapperJsonCodec.fromJson(
+                "{\"results\":{\"sunrise\":\"4:06:42 AM\",\"civil_twilight_begin\":\"3:17:41 AM\","
+                + "\"day_length\":\"12:10:20\",\"civil_twilight_end\":\"8:05:23 PM\",\"extra\":{\"a\":[1]}},"
+                + "\"status\":\"OK\"}");
+
+        SunriseSunsetData sunriseSunsetData = sunriseSunsetDataWrapper.getResults();
+        assertEquals("3:17:41 AM", sunriseSunsetData.getCivilTwilightBegin());
+        assertEquals("8:05:23 PM", sunriseSunsetData.getCivilTwilightEnd());
+    }
+
+    @Test
+    public void sunriseSunsetDataWrapperWithoutResultsHasNoResults() throws IOException {
+        SunriseSunsetDataWrapper sunriseSunsetDataWrapper = sunriseSunsetDataWrapperJsonCodec.fromJson(
+                "{\"status\":\"INVALID_REQUEST\",\"error\":{\"code\":400}}");
+
+        assertNull(sunriseSunsetDataWrapper.getResults());
+    }
+
+    @Test
+    public void sunriseSunsetDataReadsNullStringsAsEmpty() throws IOException {
+        SunriseSunsetData sunriseSunsetData = sunriseSunsetDataJsonCodec.fromJson(
+                "{\"civil_twilight_begin\":null,\"civil_twilight_end\":null}");
+
+        assertEquals("", sunriseSunsetData.getCivilTwilightBegin());
+        assertEquals("", sunriseSunsetData.getCivilTwilightEnd());
+    }
+
+    @Test
+    public void storedSunriseSunsetDataRoundTrips() throws IOException {
+        SunriseSunsetData sunriseSunsetData = sunriseSunsetDataJsonCodec.fromJson(
+                sunriseSunsetDataJsonCodec.toJson(new SunriseSunsetData("3:17:41 AM", "8:05:23 PM")));
+
+        assertEquals("3:17:41 AM", sunriseSunsetData.getCivilTwilightBegin());
+        assertEquals("8:05:23 PM", sunriseSunsetData.getCivilTwilightEnd());
+    }
+}
@@ -0,0 +1,127 @@
+package co.adrianblan.lightly.network;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Sends requests through an instrumented OkHttpClient to a local mock server, and checks what
+ * NetworkMetrics recorded for each endpoint.
+ */
+public class NetworkMetricsInterceptorTest {
+
+    private static final String BODY = "{\"status\":\"OK\"}";
+
+    private MockWebServer server;
+    private NetworkMetrics networkMetrics;
+    private OkHttpClient okHttpClient;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.play();
+
+        networkMetrics = new NetworkMetrics();
+        NetworkMetricsInterceptor networkMetricsInterceptor = new NetworkMetricsInterceptor(networkMetrics);
+
+        okHttpClient = new OkHttpClient();
+        okHttpClient.interceptors().add(networkMetricsInterceptor);
+        okHttpClient.networkInterceptors().add(networkMetricsInterceptor.getNetworkInterceptor());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void recordsResponsesPerEndpoint() throws IOException {
+        server.enqueue(new MockResponse().setBody(BODY));
+        server.enqueue(new MockResponse().setBody(BODY));
+        server.enqueue(new MockResponse().setResponseCode(500).setBody(BODY));
+
+        URL jsonUrl = server.getUrl("/json");
+        URL otherUrl = server.getUrl("/other");
+
+        assertEquals(BODY, execute(jsonUrl));
+        assertEquals(BODY, execute(jsonUrl));
+        assertEquals(BODY, execute(otherUrl));
+
+        NetworkMetrics.Endpoint json = networkMetrics.getEndpoint(NetworkMetricsInterceptor.getEndpointName(jsonUrl));
+        assertEquals(2, json.getStatusCodeCount(200));
+        assertEquals(0, json.getStatusCodeCount(500));
+        assertEquals(0, json.getFailureCount());
+        assertEquals(0, json.getCacheHitCount());
+        assertEquals(2 * BODY.length(), json.getBytesReceived());
+        assertEquals(2, json.getConnectLatency().getCount());
+        assertEquals(2, json.getFirstByteLatency().getCount());
+        assertEquals(2, json.getTotalLatency().getCount());
+
+        NetworkMetrics.Endpoint other = networkMetrics.getEndpoint(NetworkMetricsInterceptor.getEndpointName(otherUrl));
+        assertEquals(1, other.getStatusCodeCount(500));
+        assertEquals(BODY.length(), other.getBytesReceived());
+        assertEquals(1, other.getTotalLatency().getCount());
+    }
+
+    @Test
+    public void recordsFailures() throws IOException {
+
+        // The client might retry once on a new connection, so both attempts fail
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+
+        URL url = server.getUrl("/json");
+
+        try {
+            execute(url);
+            fail("The request should have failed");
+        } catch(IOException e) {
+            // Expected
+        }
+
+        NetworkMetrics.Endpoint endpoint = networkMetrics.getEndpoint(NetworkMetricsInterceptor.getEndpointName(url));
+        assertEquals(1, endpoint.getFailureCount());
+        assertEquals(1, endpoint.getTotalLatency().getCount());
+        assertEquals(0, endpoint.getBytesReceived());
+    }
+
+    @Test
+    public void dumpsEveryEndpoint() throws IOException {
+        server.enqueue(new MockResponse().setBody(BODY));
+
+        URL url = server.getUrl("/json");
+        execute(url);
+        networkMetrics.recordRetryPrompt();
+
+        StringWriter stringWriter = new StringWriter();
+        networkMetrics.dump("", new PrintWriter(stringWriter));
+        String dump = stringWriter.toString();
+
+        assertEquals(1, networkMetrics.getRetryPromptCount());
+        assertTrue(dump, dump.contains("retry prompts 1"));
+        assertTrue(dump, dump.contains(NetworkMetricsInterceptor.getEndpointName(url)));
+        assertTrue(dump, dump.contains(BODY.length() + " bytes received"));
+    }
+
+    /** Executes a GET request, and returns the body that was read */
+    private String execute(URL url) throws IOException {
+        Response response = okHttpClient.newCall(new Request.Builder().url(url).build()).execute();
+        return response.body().string();
+    }
+}
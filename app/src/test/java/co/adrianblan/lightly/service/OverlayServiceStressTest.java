@@ -0,0 +1,281 @@
+package co.adrianblan.lightly.service;
+
+import android.content.Context;
+import android.content.Intent;
+import android.view.View;
+import android.widget.LinearLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Arrays;
+
+import co.adrianblan.lightly.BuildConfig;
+import co.adrianblan.lightly.suncycle.SunCycle;
+import co.adrianblan.lightly.suncycle.SunCycleColorSettings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Floods OverlayService with intents like the ones of a fast SeekBar drag, mixed with the intents
+ * of the alarm and of new sun cycles, and reports how long each intent took to be applied together
+ * with the number of writes of the stored state and overlay view updates. The intents arrive in
+ * bursts, which the service should collapse to their newest preview and persistent update.
+ *
+ * The latency of an intent runs from when it is sent until its burst has been applied, since the
+ * service only queues tagged intents and applies them once the main looper is idle.
+ *
+ * The rates can be changed with system properties, for example
+ * ./gradlew testDebugUnitTest -Dlightly.stress.intents=20000 -Dlightly.stress.intentsPerSecond=120
+ *
+ * The latency depends on the machine, so it is only reported unless a limit is given, for example
+ * -Dlightly.stress.maxP99Millis=50
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class OverlayServiceStressTest {
+
+    // Number of intents to send
+    private static final int INTENTS = Integer.getInteger("lightly.stress.intents", 5000);
+
+    // Rate at which the intents arrive, a SeekBar drag sends about one per frame
+    private static final int INTENTS_PER_SECOND = Integer.getInteger("lightly.stress.intentsPerSecond", 60);
+
+    // Number of intents that are queued before the service gets to run, as when the main thread is busy
+    private static final int INTENTS_PER_BURST = Integer.getInteger("lightly.stress.intentsPerBurst", 4);
+
+    // Every n:th intent is a persistent intent instead of a temporary preview
+    private static final int PERSISTENT_INTERVAL = Integer.getInteger("lightly.stress.persistentInterval", 25);
+
+    // The slowest intent that is allowed from sent to applied as the 99th percentile, or null for no limit
+    private static final Integer MAX_P99_MILLIS = Integer.getInteger("lightly.stress.maxP99Millis");
+
+    private StressOverlayService overlayService;
+
+    /** Counts every write to the stored overlay state, both to its file and to its preferences */
+    static class CountingOverlayStateHandler extends OverlayStateHandler {
+
+        int writes;
+
+        CountingOverlayStateHandler(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void setActive(boolean isActive) {
+            writes++;
+            super.setActive(isActive);
+        }
+
+        @Override
+        public void saveSunCycle(SunCycle sunCycle, SunCycleColorSettings colorSettings, boolean isAdaptiveBrightness) {
+            writes++;
+            super.saveSunCycle(sunCycle, colorSettings, isAdaptiveBrightness);
+        }
+
+        @Override
+        public void setFilterColor(int filterColor) {
+            writes++;
+            super.setFilterColor(filterColor);
+        }
+    }
+
+    /** Counts every color update of the overlay view */
+    static class CountingOverlayView extends LinearLayout {
+
+        int updates;
+        int color;
+
+        CountingOverlayView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void setBackgroundColor(int color) {
+            updates++;
+            this.color = color;
+            super.setBackgroundColor(color);
+        }
+    }
+
+    /** OverlayService which counts its writes and view updates */
+    static class StressOverlayService extends OverlayService {
+
+        CountingOverlayStateHandler countingStateHandler;
+        CountingOverlayView countingView;
+
+        @Override
+        OverlayStateHandler createOverlayStateHandler() {
+            countingStateHandler = new CountingOverlayStateHandler(this);
+            return countingStateHandler;
+        }
+
+        @Override
+        View createOverlayView() {
+            countingView = new CountingOverlayView(this);
+            return countingView;
+        }
+
+        @Override
+        long getColorTransitionMillis(boolean isPreview) {
+
+            // Without fades every update sets the color once, so that the updates can be counted
+            return 0;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        overlayService = Robolectric.buildService(StressOverlayService.class).create().get();
+    }
+
+    @Test
+    public void intentStorm() {
+        long[] latencies = new long[INTENTS];
+        long intervalMillis = Math.max(1000L * INTENTS_PER_BURST / INTENTS_PER_SECOND, 1L);
+        int lastTemporaryColor = 0;
+        boolean lastWasTemporary = false;
+        int sunCycleIntents = 0;
+        int alarmIntents = 0;
+        int burstStart = 0;
+
+        for(int i = 0; i < INTENTS; i++) {
+            Intent intent;
+
+            if(i % PERSISTENT_INTERVAL == 0) {
+                intent = createPersistentIntent(i / PERSISTENT_INTERVAL);
+                lastWasTemporary = false;
+
+                if(intent.hasExtra(OverlayUpdateSequence.EXTRA_SEQUENCE)) {
+                    sunCycleIntents++;
+                } else {
+                    alarmIntents++;
+                }
+            } else {
+                lastTemporaryColor = getDragColor(i);
+                intent = createTemporaryIntent(lastTemporaryColor);
+                lastWasTemporary = true;
+            }
+
+            // Holds the time the intent was sent, until its burst has been applied
+            latencies[i] = System.nanoTime();
+            overlayService.onStartCommand(intent, 0, i + 1);
+
+            // Let time pass until the next burst, which applies anything the service posted
+            if((i + 1) % INTENTS_PER_BURST == 0 || i == INTENTS - 1) {
+                ShadowLooper.idleMainLooper(intervalMillis);
+                long appliedTime = System.nanoTime();
+
+                for(int j = burstStart; j <= i; j++) {
+                    latencies[j] = appliedTime - latencies[j];
+                }
+
+                burstStart = i + 1;
+            }
+        }
+
+        int stateWrites = overlayService.countingStateHandler.writes;
+        int viewUpdates = overlayService.countingView.updates;
+
+        Arrays.sort(latencies);
+
+        System.out.println("OverlayService handled " + INTENTS + " intents at " + INTENTS_PER_SECOND
+                + " per second in bursts of " + INTENTS_PER_BURST + ", with every " + PERSISTENT_INTERVAL
+                + ":th persistent");
+        System.out.println("Latency p50 " + getMillis(latencies, 0.50) + " ms, p90 " + getMillis(latencies, 0.90)
+                + " ms, p99 " + getMillis(latencies, 0.99) + " ms, max " + getMillis(latencies, 1.0) + " ms");
+        System.out.println("State writes " + stateWrites + ", view updates " + viewUpdates);
+
+        if(lastWasTemporary) {
+            assertEquals("The last preview should be shown", lastTemporaryColor, overlayService.countingView.color);
+        }
+
+        // Queued previews are collapsed, so every burst causes at most one preview besides the persistent updates
+        int bursts = (INTENTS + INTENTS_PER_BURST - 1) / INTENTS_PER_BURST;
+        assertTrue("Too many view updates: " + viewUpdates, viewUpdates <= bursts + sunCycleIntents + alarmIntents);
+
+        // Every burst stores at most its newest preview, every sun cycle itself and its color, every
+        // alarm its color, and the overlay is marked active once
+        int maxStateWrites = bursts + 2 * sunCycleIntents + alarmIntents + 1;
+        assertTrue("Too many state writes: " + stateWrites + ", at most " + maxStateWrites,
+                stateWrites <= maxStateWrites);
+
+        if(MAX_P99_MILLIS != null) {
+            assertTrue("The 99th percentile was " + getMillis(latencies, 0.99) + " ms",
+                    getMillis(latencies, 0.99) <= MAX_P99_MILLIS);
+        }
+    }
+
+    @Test
+    public void persistentUpdateBeforeNewerPreview() {
+        int previewColor = getDragColor(1);
+
+        // Both are queued before the service gets to run
+        overlayService.onStartCommand(createPersistentIntent(0), 0, 1);
+        overlayService.onStartCommand(createTemporaryIntent(previewColor), 0, 2);
+        ShadowLooper.idleMainLooper();
+
+        assertTrue("The sun cycle should be stored", overlayService.countingStateHandler.getState().hasSunCycle());
+        assertTrue("The overlay should be active", overlayService.countingStateHandler.isActive());
+        assertEquals("The newer preview should be shown", previewColor, overlayService.countingView.color);
+    }
+
+    @Test
+    public void previewOlderThanPersistentUpdate() {
+        int previewColor = getDragColor(1);
+        Intent preview = createTemporaryIntent(previewColor);
+        Intent persistentUpdate = createPersistentIntent(0);
+
+        // The preview was sent first, so the sun cycle replaces it
+        overlayService.onStartCommand(preview, 0, 1);
+        overlayService.onStartCommand(persistentUpdate, 0, 2);
+        ShadowLooper.idleMainLooper();
+
+        assertTrue("The sun cycle should be stored", overlayService.countingStateHandler.getState().hasSunCycle());
+        assertTrue("Only the sun cycle should be shown", overlayService.countingView.updates <= 1);
+        assertTrue("The outdated preview was shown", overlayService.countingView.color != previewColor);
+    }
+
+    /** Returns a preview color, as if the SeekBar was dragged back and forth */
+    private static int getDragColor(int index) {
+        int progress = Math.abs((index % (2 * SunCycleColorSettings.INTENSITY_MAX)) - SunCycleColorSettings.INTENSITY_MAX);
+        return SunCycleColorSettings.of(progress, SunCycleColorSettings.INTENSITY_MAX - progress).getOverlayColorMax();
+    }
+
+    private Intent createTemporaryIntent(int filterColor) {
+        Intent intent = new Intent(overlayService, OverlayService.class);
+        intent.putExtra(OverlayService.EXTRA_FILTER_COLOR, filterColor);
+        return OverlayUpdateSequence.tag(intent);
+    }
+
+    /** Alternates between the intents of a new sun cycle and of the alarm */
+    private Intent createPersistentIntent(int index) {
+        Intent intent = new Intent(overlayService, OverlayService.class);
+
+        if(index % 2 == 0) {
+            intent.putExtra(OverlayService.EXTRA_SUNRISE_POSITION, 0.25f);
+            intent.putExtra(OverlayService.EXTRA_SUNSET_POSITION, 0.75f);
+            intent.putExtra(OverlayService.EXTRA_COLOR_FILTER_INTENSITY, index % 101);
+            intent.putExtra(OverlayService.EXTRA_BRIGHTNESS_FILTER_INTENSITY, 80);
+            return OverlayUpdateSequence.tag(intent);
+        } else {
+
+            // The alarm intents are not tagged
+            intent.setAction(OverlayService.ACTION_UPDATE);
+            return intent;
+        }
+    }
+
+    /** Returns the latency at a percentile [0, 1] of the sorted latencies, in milliseconds */
+    private static double getMillis(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        index = Math.max(0, Math.min(index, sortedLatencies.length - 1));
+        return sortedLatencies[index] / 1000000.0;
+    }
+}
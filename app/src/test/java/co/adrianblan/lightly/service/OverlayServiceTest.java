@@ -0,0 +1,79 @@
+package co.adrianblan.lightly.service;
+
+import android.app.AlarmManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Date;
+
+import co.adrianblan.lightly.BuildConfig;
+import co.adrianblan.lightly.suncycle.SunCycle;
+import co.adrianblan.lightly.suncycle.SunCycleColorSettings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that the overlay keeps following its sun cycle after the process has been killed, and
+ * the service has been restarted by the system without an intent.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class OverlayServiceTest {
+
+    private ShadowAlarmManager shadowAlarmManager;
+
+    @Before
+    public void setUp() {
+        AlarmManager alarmManager =
+                (AlarmManager) RuntimeEnvironment.application.getSystemService(Context.ALARM_SERVICE);
+        shadowAlarmManager = shadowOf(alarmManager);
+    }
+
+    @Test
+    public void restartWithoutIntentRestoresTheSunCycle() {
+
+        // The state that the killed process left behind
+        OverlayStateHandler overlayStateHandler = new OverlayStateHandler(RuntimeEnvironment.application);
+        overlayStateHandler.saveSunCycle(new SunCycle(new Date(), 0.25f, 0.75f),
+                SunCycleColorSettings.of(50, 80), false);
+        overlayStateHandler.setActive(true);
+
+        OverlayService overlayService = Robolectric.buildService(OverlayServiceStressTest.StressOverlayService.class)
+                .create().get();
+
+        assertEquals(Service.START_STICKY, overlayService.onStartCommand(null, 0, 1));
+        assertNotNull("The alarm should be scheduled", shadowAlarmManager.getNextScheduledAlarm());
+
+        // The alarm is cancelled while the screen is off, and must come back once it is on
+        RuntimeEnvironment.application.sendBroadcast(new Intent(Intent.ACTION_SCREEN_OFF));
+        ShadowLooper.idleMainLooper();
+        assertNull("The alarm should be cancelled", shadowAlarmManager.getNextScheduledAlarm());
+
+        RuntimeEnvironment.application.sendBroadcast(new Intent(Intent.ACTION_SCREEN_ON));
+        ShadowLooper.idleMainLooper();
+        assertNotNull("The alarm should be scheduled again", shadowAlarmManager.getNextScheduledAlarm());
+    }
+
+    @Test
+    public void restartWithoutStateStaysInactive() {
+        OverlayService overlayService = Robolectric.buildService(OverlayServiceStressTest.StressOverlayService.class)
+                .create().get();
+
+        overlayService.onStartCommand(null, 0, 1);
+        assertNull("Nothing to follow, so no alarm", shadowAlarmManager.getNextScheduledAlarm());
+    }
+}
@@ -0,0 +1,196 @@
+package co.adrianblan.lightly.suncycle;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the hot paths of the overlay do not allocate more than their budget.
+ *
+ * The bytes allocated by the current thread are read from the allocation counters of the JVM, and
+ * the total of many calls after a warm up is held against the budget of all of them, so that even
+ * a few bytes are caught. The JIT may allocate once while it compiles a path, so the best of a few
+ * rounds is used, where an allocation of the path itself shows up in every round.
+ *
+ * These are the paths that OverlayService runs on every update. SunCycleView.onDraw and
+ * OverlayService.onStartCommand are not covered, since they need Robolectric, whose shadows of
+ * Canvas, Path, Intent and Looper allocate by themselves and would be measured instead.
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARM_UP_CALLS = 20000;
+    private static final int MEASURED_CALLS = 100000;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private static final long START_TIME_MILLIS = 1458000000000L;
+    private static final long STEP_MILLIS = 61 * 1000;
+
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/Stockholm");
+
+    // Written by the measured calls, so that the JIT can not remove them
+    private int sink;
+
+    /** A call of a hot path, which gets the index of the call */
+    private interface HotPath {
+        void call(int index);
+    }
+
+    @Test
+    public void sunPositionUpdateDoesNotAllocate() {
+        final SunCycle sunCycle = new SunCycle(new Date(START_TIME_MILLIS), 0.25f, 0.75f);
+
+        assertWithinBudget("SunCycle.updateSunPositionHorizontal", 0, new HotPath() {
+            @Override
+            public void call(int index) {
+                sunCycle.updateSunPositionHorizontal(START_TIME_MILLIS + index * STEP_MILLIS, TIME_ZONE);
+                sink += Float.floatToIntBits(sunCycle.getSunPositionHorizontal());
+            }
+        });
+    }
+
+    @Test
+    public void referenceOverlayColorDoesNotAllocate() {
+        final int overlayColorMax = SunCycleColorSettings.of(50, 50).getOverlayColorMax();
+
+        assertWithinBudget("SunCycleColorHandler.getOverlayColor", 0, new HotPath() {
+            @Override
+            public void call(int index) {
+                sink += SunCycleColorHandler.getOverlayColor(overlayColorMax, getPosition(index), 0.25f, 0.75f);
+            }
+        });
+    }
+
+    @Test
+    public void settingsLookupDoesNotAllocate() {
+        assertWithinBudget("SunCycleColorSettings.of", 0, new HotPath() {
+            @Override
+            public void call(int index) {
+                sink += SunCycleColorSettings.of(index % 101, (index / 101) % 101).getOverlayColorMax();
+            }
+        });
+    }
+
+    @Test
+    public void sunCycleScheduleDoesNotAllocate() {
+        final FilterSchedule schedule = new SunCycleScheduleGenerator(0.25f, 0.75f,
+                SunCycleColorHandler.TWILIGHT_TRANSITION_DISTANCE).generate();
+        final SunCycleColorSettings colorSettings = SunCycleColorSettings.of(30, 70);
+
+        assertWithinBudget("FilterSchedule.getOverlayColor", 0, new HotPath() {
+            @Override
+            public void call(int index) {
+                sink += schedule.getOverlayColor(getPosition(index), colorSettings);
+            }
+        });
+    }
+
+    @Test
+    public void bedtimeScheduleDoesNotAllocate() {
+        final FilterSchedule schedule = new BedtimeScheduleGenerator(23f / 24f, 7f / 24f, 1f / 24f).generate();
+        final SunCycleColorSettings colorSettings = SunCycleColorSettings.of(30, 70);
+
+        assertWithinBudget("FilterSchedule.getOverlayColor with easing", 0, new HotPath() {
+            @Override
+            public void call(int index) {
+                sink += schedule.getOverlayColor(getPosition(index), colorSettings);
+            }
+        });
+    }
+
+    @Test
+    public void overlayColorPathDoesNotAllocate() {
+        final SunCycle sunCycle = new SunCycle(new Date(START_TIME_MILLIS), 0.3f, 0.8f);
+        final FilterSchedule schedule = new SunCycleScheduleGenerator(sunCycle).generate();
+        final SunCycleColorSettings colorSettings = SunCycleColorSettings.of(80, 80);
+
+        // The same calls as OverlayService.updateSunCycleColor
+        assertWithinBudget("OverlayService color path", 0, new HotPath() {
+            @Override
+            public void call(int index) {
+                long currentTimeMillis = START_TIME_MILLIS + index * STEP_MILLIS;
+                sink += (int) SunCycle.getDayStartMillis(currentTimeMillis, TIME_ZONE);
+                sunCycle.updateSunPositionHorizontal(currentTimeMillis, TIME_ZONE);
+                sink += schedule.getOverlayColor(sunCycle.getSunPositionHorizontal(), colorSettings);
+            }
+        });
+    }
+
+    @Test
+    public void bulkDayDoesNotAllocate() {
+        final FilterSchedule schedule = new SunCycleScheduleGenerator(0.25f, 0.75f,
+                SunCycleColorHandler.TWILIGHT_TRANSITION_DISTANCE).generate();
+        final SunCycleColorSettings colorSettings = SunCycleColorSettings.of(30, 70);
+        final float[] positions = new float[144];
+        final float[] heights = new float[144];
+        final int[] colors = new int[144];
+
+        // A day in steps of ten minutes, as for a preview of the schedule
+        assertWithinBudget("Bulk evaluation of a day", 0, new HotPath() {
+            @Override
+            public void call(int index) {
+                SunCycle.getPositionsHorizontal(START_TIME_MILLIS + index * STEP_MILLIS, 10 * 60 * 1000,
+                        TIME_ZONE, positions, positions.length);
+                SunCycle.getVerticalPositions(0f, 1f / heights.length, 0.25f, heights, heights.length);
+                schedule.getOverlayColors(positions, colorSettings, colors, colors.length);
+                sink += colors[index % colors.length] + Float.floatToIntBits(heights[index % heights.length]);
+            }
+        });
+    }
+
+    /** Returns a position [0, 1] which moves one minute per call */
+    private static float getPosition(int index) {
+        return (index % 1440) / 1440f;
+    }
+
+    /** Fails if the hot path allocates more than the budget of bytes per call, in total over all calls */
+    private void assertWithinBudget(String name, long budgetBytesPerCall, HotPath hotPath) {
+        com.sun.management.ThreadMXBean threadMXBean = getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for(int i = 0; i < WARM_UP_CALLS; i++) {
+            hotPath.call(i);
+        }
+
+        // The first read of the counter might allocate by itself
+        threadMXBean.getThreadAllocatedBytes(threadId);
+
+        long leastAllocatedBytes = Long.MAX_VALUE;
+
+        for(int round = 0; round < MEASURED_ROUNDS; round++) {
+            long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+
+            for(int i = 0; i < MEASURED_CALLS; i++) {
+                hotPath.call(i);
+            }
+
+            long allocatedAfter = threadMXBean.getThreadAllocatedBytes(threadId);
+            leastAllocatedBytes = Math.min(leastAllocatedBytes, allocatedAfter - allocatedBefore);
+        }
+
+        long budgetBytes = budgetBytesPerCall * MEASURED_CALLS;
+
+        assertTrue(name + " allocated " + leastAllocatedBytes + " bytes in " + MEASURED_CALLS
+                + " calls, but the budget is " + budgetBytes, leastAllocatedBytes <= budgetBytes);
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        if(!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            fail("The JVM does not support allocation counters");
+        }
+
+        com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+
+        if(!allocationMXBean.isThreadAllocatedMemoryEnabled()) {
+            allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        return allocationMXBean;
+    }
+}
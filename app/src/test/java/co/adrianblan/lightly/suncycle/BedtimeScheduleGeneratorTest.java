@@ -0,0 +1,110 @@
+package co.adrianblan.lightly.suncycle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the strengths of bedtime schedules, also where the bedtime is at midnight or where a
+ * transition crosses it, and that the strength never jumps anywhere in the day.
+ */
+public class BedtimeScheduleGeneratorTest {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final float HALF_HOUR = 1f / 48f;
+
+    // The steepest change of a smooth transition of half an hour in one minute, with some margin
+    private static final float MAX_CHANGE_PER_MINUTE = 1.5f * 2f / 30f * 1.01f;
+
+    private static final float TOLERANCE = 1e-4f;
+
+    @Test
+    public void fadeInCrossingMidnight() {
+        FilterSchedule schedule = new BedtimeScheduleGenerator(getPosition(0, 15), getPosition(7, 0), HALF_HOUR).generate();
+
+        assertStrength(schedule, 22, 0, 0f);
+        assertStrength(schedule, 23, 45, 0f);
+        assertStrength(schedule, 0, 0, 0.5f);
+        assertStrength(schedule, 0, 15, 1f);
+        assertStrength(schedule, 3, 0, 1f);
+        assertStrength(schedule, 7, 30, 0f);
+
+        // The fade in keeps rising on both sides of midnight
+        assertTrue(getStrength(schedule, 23, 55) < getStrength(schedule, 23, 59));
+        assertTrue(getStrength(schedule, 23, 59) < getStrength(schedule, 0, 1));
+        assertTrue(getStrength(schedule, 0, 1) < getStrength(schedule, 0, 5));
+
+        assertContinuous(schedule);
+    }
+
+    @Test
+    public void fadeOutCrossingMidnight() {
+        FilterSchedule schedule = new BedtimeScheduleGenerator(getPosition(21, 0), getPosition(23, 50), HALF_HOUR).generate();
+
+        // A third of the fade out is done at midnight
+        assertStrength(schedule, 0, 0, 1f - 7f / 27f);
+        assertStrength(schedule, 23, 50, 1f);
+        assertStrength(schedule, 0, 20, 0f);
+        assertStrength(schedule, 12, 0, 0f);
+
+        assertContinuous(schedule);
+    }
+
+    @Test
+    public void bedtimeAtMidnight() {
+        FilterSchedule schedule = new BedtimeScheduleGenerator(0f, getPosition(7, 0), HALF_HOUR).generate();
+
+        assertStrength(schedule, 23, 0, 0f);
+        assertStrength(schedule, 23, 30, 0f);
+        assertStrength(schedule, 23, 45, 0.5f);
+        assertStrength(schedule, 0, 0, 1f);
+        assertStrength(schedule, 3, 0, 1f);
+        assertStrength(schedule, 7, 0, 1f);
+        assertStrength(schedule, 7, 15, 0.5f);
+        assertStrength(schedule, 7, 30, 0f);
+
+        assertContinuous(schedule);
+    }
+
+    @Test
+    public void nightWithinTheDay() {
+        FilterSchedule schedule = new BedtimeScheduleGenerator(getPosition(1, 0), getPosition(9, 0), HALF_HOUR).generate();
+
+        assertStrength(schedule, 0, 0, 0f);
+        assertStrength(schedule, 0, 45, 0.5f);
+        assertStrength(schedule, 5, 0, 1f);
+        assertStrength(schedule, 9, 15, 0.5f);
+        assertStrength(schedule, 23, 59, 0f);
+
+        assertContinuous(schedule);
+    }
+
+    /** Checks that the strength never jumps between two minutes, also from the end of the day to its start */
+    private static void assertContinuous(FilterSchedule schedule) {
+        float previousStrength = schedule.getTemperatureStrength(1f);
+
+        for(int minute = 0; minute <= MINUTES_PER_DAY; minute++) {
+            float strength = schedule.getTemperatureStrength(minute / (float) MINUTES_PER_DAY);
+
+            assertTrue("Strength jumps from " + previousStrength + " to " + strength + " at minute " + minute,
+                    Math.abs(strength - previousStrength) <= MAX_CHANGE_PER_MINUTE);
+            assertEquals(strength, schedule.getBrightnessStrength(minute / (float) MINUTES_PER_DAY), 0f);
+            previousStrength = strength;
+        }
+    }
+
+    private static void assertStrength(FilterSchedule schedule, int hours, int minutes, float expectedStrength) {
+        assertEquals(String.format("Strength at %02d:%02d", hours, minutes), expectedStrength,
+                getStrength(schedule, hours, minutes), TOLERANCE);
+    }
+
+    private static float getStrength(FilterSchedule schedule, int hours, int minutes) {
+        return schedule.getTemperatureStrength(getPosition(hours, minutes));
+    }
+
+    private static float getPosition(int hours, int minutes) {
+        return (hours * 60 + minutes) / (float) MINUTES_PER_DAY;
+    }
+}
@@ -0,0 +1,100 @@
+package co.adrianblan.lightly.suncycle;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the bulk evaluations that fill arrays give the same results as evaluating each
+ * position by itself, including for ranges of times which wrap around midnight.
+ */
+public class BulkEvaluationTest {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final long START_TIME_MILLIS = 1458000000000L;
+    private static final long STEP_MILLIS = 7 * 60 * 1000;
+
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/Stockholm");
+
+    // Largest allowed difference of a height, the bulk phases are rounded to floats before the sines
+    private static final float HEIGHT_TOLERANCE = 1e-5f;
+
+    @Test
+    public void verticalPositionsMatchSinglePositions() {
+        float[] heights = new float[MINUTES_PER_DAY + 1];
+        float step = 1f / MINUTES_PER_DAY;
+
+        for(float cycleOffset : new float[] {0f, 0.25f, 0.3126f, 0.9f}) {
+            SunCycle.getVerticalPositions(0f, step, cycleOffset, heights, heights.length);
+
+            for(int i = 0; i < heights.length; i++) {
+                assertEquals("Offset " + cycleOffset + ", minute " + i,
+                        SunCycle.getVerticalPosition(i * step, cycleOffset), heights[i], HEIGHT_TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void referenceColorsMatchSingleColors() {
+        float[] positions = getMinutePositions();
+        int[] colors = new int[positions.length];
+        int overlayColorMax = SunCycleColorSettings.of(60, 40).getOverlayColorMax();
+
+        SunCycleColorHandler.getOverlayColors(overlayColorMax, positions, 0.3f, 0.8f, colors, colors.length);
+
+        for(int i = 0; i < colors.length; i++) {
+            assertEquals("Minute " + i, SunCycleColorHandler.getOverlayColor(overlayColorMax, positions[i], 0.3f, 0.8f),
+                    colors[i]);
+        }
+    }
+
+    @Test
+    public void scheduleColorsMatchSingleColors() {
+        FilterSchedule[] schedules = {
+                new SunCycleScheduleGenerator(0.25f, 0.75f, SunCycleColorHandler.TWILIGHT_TRANSITION_DISTANCE).generate(),
+                new SunCycleScheduleGenerator(0.02f, 0.99f, SunCycleColorHandler.TWILIGHT_TRANSITION_DISTANCE).generate(),
+                new BedtimeScheduleGenerator(23f / 24f, 7f / 24f, 1f / 24f).generate()
+        };
+        SunCycleColorSettings colorSettings = SunCycleColorSettings.of(30, 70);
+
+        // Three days of times, which go back to 0 at each midnight
+        float[] positions = new float[3 * 24 * 60 * 60 * 1000 / (int) STEP_MILLIS];
+        int[] colors = new int[positions.length];
+        SunCycle.getPositionsHorizontal(START_TIME_MILLIS, STEP_MILLIS, TIME_ZONE, positions, positions.length);
+
+        for(FilterSchedule schedule : schedules) {
+            schedule.getOverlayColors(positions, colorSettings, colors, colors.length);
+
+            for(int i = 0; i < colors.length; i++) {
+                assertEquals("Position " + positions[i], schedule.getOverlayColor(positions[i], colorSettings), colors[i]);
+            }
+        }
+    }
+
+    @Test
+    public void positionsMatchSunPositions() {
+        float[] positions = new float[1000];
+        SunCycle sunCycle = new SunCycle();
+
+        SunCycle.getPositionsHorizontal(START_TIME_MILLIS, STEP_MILLIS, TIME_ZONE, positions, positions.length);
+
+        for(int i = 0; i < positions.length; i++) {
+            sunCycle.updateSunPositionHorizontal(START_TIME_MILLIS + i * STEP_MILLIS, TIME_ZONE);
+            assertEquals(sunCycle.getSunPositionHorizontal(), positions[i], 0f);
+        }
+    }
+
+    /** Returns the positions [0, 1] of every minute of a day */
+    private static float[] getMinutePositions() {
+        float[] positions = new float[MINUTES_PER_DAY + 1];
+
+        for(int i = 0; i < positions.length; i++) {
+            positions[i] = i / (float) MINUTES_PER_DAY;
+        }
+
+        return positions;
+    }
+}
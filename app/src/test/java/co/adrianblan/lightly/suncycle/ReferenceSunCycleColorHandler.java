@@ -0,0 +1,189 @@
+package co.adrianblan.lightly.suncycle;
+
+/**
+ * A frozen copy of the color engine of SunCycleColorHandler, from before the colors were looked up
+ * from tables and evaluated from schedules, which the optimized color paths are checked against.
+ *
+ * The code is kept as it was, except that the position of the sun and the twilights are passed in
+ * instead of a SunCycle, and that colors are packed like android.graphics.Color by a wrapper of its
+ * own. It must not call any of the code that it is the reference for.
+ */
+class ReferenceSunCycleColorHandler {
+
+    private static final int TWILIGHT_TRANSITION_DURATION = 90; // Twilight transition duration in minutes [0, 1440[
+    private static final float TWILIGHT_TRANSITION_DISTANCE =
+            (TWILIGHT_TRANSITION_DURATION / 60f) / 24f; // Twilight transition distance in [0, 1]
+
+    private static final ColorWrapper colorFilterBase = new ColorWrapper(0, 255, 130, 0);
+    private static final ColorWrapper brightnessFilterBase = new ColorWrapper(0, 0, 0, 0);
+    private static final int COLOR_FILTER_MAX_ALPHA = 180;
+    private static final int COLOR_TEMPERATURE_MIN = 1800;
+    private static final int COLOR_TEMPERATURE_MAX = 6000;
+
+    private final int colorFilterIntensity;
+    private final int brightnessFilterIntensity;
+
+    ReferenceSunCycleColorHandler(int colorFilterIntensity, int brightnessFilterIntensity) {
+        this.colorFilterIntensity = colorFilterIntensity;
+        this.brightnessFilterIntensity = brightnessFilterIntensity;
+    }
+
+    /** Gets the maximum possible prominent color */
+    int getOverlayColorMax() {
+        return getOverlayColor().getColor();
+    }
+
+    /** Gives the appropriate color in the cycle, for the positions [0, 1] of the sun and the twilights */
+    int getOverlayColor(float positionHorizontal, float sunrise, float sunset) {
+        ColorWrapper sunCycleColorWrapper = getOverlayColor();
+
+        // Scale the alpha of the color if we are under twilight
+        if(positionHorizontal <= sunrise || positionHorizontal >= sunset) {
+            float minVerticalDistanceFromTwilight = Math.min(Math.abs(sunrise - positionHorizontal), Math.abs(sunset - positionHorizontal));
+
+            // Calculate alpha based on distance to twilight
+            float colorAlphaScale = Math.min((minVerticalDistanceFromTwilight / TWILIGHT_TRANSITION_DISTANCE), 1.0f);
+
+            sunCycleColorWrapper.setAlpha((int) (sunCycleColorWrapper.getAlpha() * colorAlphaScale));
+        } else {
+            sunCycleColorWrapper.setAlpha(0);
+        }
+
+        return sunCycleColorWrapper.getColor();
+    }
+
+    /** Returns the interpolated color of the temperature and the brightness based on their intensities */
+    private ColorWrapper getOverlayColor() {
+
+        ColorWrapper colorFilterWrapper = getColorFilterWrapper();
+        ColorWrapper brightnessFilterWrapper = getBrightnessFilterWrapper();
+
+        return interpolate(colorFilterWrapper, brightnessFilterWrapper, 100 - colorFilterIntensity, 300 - 3 * brightnessFilterIntensity);
+    }
+
+    /** Returns the color of the color filter */
+    int getColorFilterColor() {
+        return getColorFilterWrapper().getColor();
+    }
+
+    private ColorWrapper getColorFilterWrapper() {
+        ColorWrapper colorFilterWrapperBase = new ColorWrapper(colorFilterBase);
+        ColorWrapper colorFilterWrapper = new ColorWrapper(colorFilterWrapperBase);
+        float colorFilterIntensityScale = colorFilterIntensity / 100f;
+
+        colorFilterWrapper.setAlpha(COLOR_FILTER_MAX_ALPHA -
+                (int) (COLOR_FILTER_MAX_ALPHA * colorFilterIntensityScale));
+
+        int green = colorFilterWrapperBase.getGreen() + (int) ((255 - colorFilterWrapperBase.getGreen())
+                * colorFilterIntensityScale);
+
+        colorFilterWrapper.setGreen(green);
+
+        int blue = colorFilterWrapperBase.getBlue() + (int) ((255 - colorFilterWrapperBase.getBlue())
+                * colorFilterIntensityScale);
+
+        colorFilterWrapper.setBlue(blue);
+
+        return colorFilterWrapper;
+    }
+
+    /** Gets the current color temperature of the color filter, rounded to nearest 100 */
+    int getColorTemperature() {
+        int alpha = getColorFilterWrapper().getAlpha();
+
+        // Get precise temperature
+        int temperature = (int) (COLOR_TEMPERATURE_MIN + (COLOR_TEMPERATURE_MAX - COLOR_TEMPERATURE_MIN)
+                * (1.0f - ((float) alpha / COLOR_FILTER_MAX_ALPHA)));
+
+        // Round to nearest 100
+        temperature = ((temperature + 50) / 100) * 100;
+
+        return temperature;
+    }
+
+    /** Get the brightness percent, rounded to nearest 5 */
+    int getBrightnessPercent() {
+        float brightness = (1.0f - (getBrightnessFilterWrapper().getAlpha() / 255f)) * 100f;
+
+        // Round to nearest 5%
+        return (int)((brightness + 2.5f) / 5) * 5;
+    }
+
+    /** Returns the color of the brightness filter */
+    int getBrightnessFilterColor() {
+        return getBrightnessFilterWrapper().getColor();
+    }
+
+    private ColorWrapper getBrightnessFilterWrapper() {
+        ColorWrapper brightnessFilterWrapper = new ColorWrapper(brightnessFilterBase);
+        brightnessFilterWrapper.setAlpha(200 - (int) 2.0 * brightnessFilterIntensity);
+
+        return brightnessFilterWrapper;
+    }
+
+    /** Magically interpolates two colors based on their intensities */
+    private static ColorWrapper interpolate (ColorWrapper color1, ColorWrapper color2,
+                                             int colorIntensity, int brightnessIntensity) {
+
+        float colorIntensityFraction = (float) colorIntensity / (float) (colorIntensity + brightnessIntensity);
+        float brightnessIntensityFraction = 1.0f - colorIntensityFraction;
+
+        int a = (int) Math.max((color1.getAlpha() + color1.getAlpha()) / 2.2, Math.max(color1.getAlpha(), color2.getAlpha()) * 0.9);
+        int r = (int) (color1.getRed() * colorIntensityFraction + color2.getRed() * brightnessIntensityFraction);
+        int g = (int) (color1.getGreen() * colorIntensityFraction + color2.getGreen() * brightnessIntensityFraction);
+        int b = (int) (color1.getBlue() * colorIntensityFraction + color2.getBlue()* brightnessIntensityFraction);
+
+        return new ColorWrapper(a, r, g, b);
+    }
+
+    /** The color components, packed like android.graphics.Color.argb */
+    private static class ColorWrapper {
+        private int alpha;
+        private int red;
+        private int green;
+        private int blue;
+
+        ColorWrapper(int alpha, int red, int green, int blue) {
+            this.alpha = alpha;
+            this.red = red;
+            this.green = green;
+            this.blue = blue;
+        }
+
+        ColorWrapper(ColorWrapper color) {
+            this(color.alpha, color.red, color.green, color.blue);
+        }
+
+        int getColor() {
+            return (alpha << 24) | (red << 16) | (green << 8) | blue;
+        }
+
+        int getAlpha() {
+            return alpha;
+        }
+
+        void setAlpha(int alpha) {
+            this.alpha = alpha;
+        }
+
+        int getRed() {
+            return red;
+        }
+
+        int getGreen() {
+            return green;
+        }
+
+        void setGreen(int green) {
+            this.green = green;
+        }
+
+        int getBlue() {
+            return blue;
+        }
+
+        void setBlue(int blue) {
+            this.blue = blue;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package co.adrianblan.lightly.suncycle;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the civil twilights of SolarCalculator against reference times, and the days without a
+ * night or without a day near the poles.
+ */
+public class SolarCalculatorTest {
+
+    // The reference times are rounded to minutes, and almanacs differ by a minute or two
+    private static final int TOLERANCE_MINUTES = 5;
+
+    @Test
+    public void equinoxInNewYork() throws ParseException {
+        assertTwilight("America/New_York", "2016-03-20", 40.71, -74.01, "06:31", "19:35");
+    }
+
+    @Test
+    public void winterSolsticeInStockholm() throws ParseException {
+        assertTwilight("Europe/Stockholm", "2016-12-21", 59.33, 18.07, "07:47", "15:43");
+    }
+
+    @Test
+    public void winterSolsticeInSydney() throws ParseException {
+        assertTwilight("Australia/Sydney", "2016-06-21", -33.87, 151.21, "06:33", "17:21");
+    }
+
+    @Test
+    public void midnightSunHasNoNight() throws ParseException {
+        SunCycle sunCycle = getSunCycle("Arctic/Longyearbyen", "2016-06-21", 78.22, 15.65);
+
+        assertEquals(0f, sunCycle.getSunrisePositionHorizontal(), 0f);
+        assertEquals(1f, sunCycle.getSunsetPositionHorizontal(), 0f);
+    }
+
+    @Test
+    public void polarNightHasNoDay() throws ParseException {
+        SunCycle sunCycle = getSunCycle("Arctic/Longyearbyen", "2016-12-21", 78.22, 15.65);
+
+        assertEquals(sunCycle.getSunrisePositionHorizontal(), sunCycle.getSunsetPositionHorizontal(), 0f);
+    }
+
+    @Test
+    public void twilightAfterMidnightIsClampedToTheDay() throws ParseException {
+        SunCycle sunCycle = getSunCycle("Europe/Oslo", "2016-06-10", 63.43, 10.40);
+
+        assertTrue(sunCycle.getSunrisePositionHorizontal() <= sunCycle.getSunsetPositionHorizontal());
+        assertTrue(sunCycle.getSunsetPositionHorizontal() <= 1f);
+    }
+
+    private static void assertTwilight(String timeZoneId, String date, double latitude, double longitude,
+                                       String civilTwilightBegin, String civilTwilightEnd) throws ParseException {
+        SunCycle sunCycle = getSunCycle(timeZoneId, date, latitude, longitude);
+
+        assertEquals("Civil twilight begin", getMinuteOfDay(civilTwilightBegin),
+                sunCycle.getSunrisePositionHorizontal() * 24 * 60, TOLERANCE_MINUTES);
+        assertEquals("Civil twilight end", getMinuteOfDay(civilTwilightEnd),
+                sunCycle.getSunsetPositionHorizontal() * 24 * 60, TOLERANCE_MINUTES);
+    }
+
+    /** Returns the sun cycle at noon of a local date */
+    private static SunCycle getSunCycle(String timeZoneId, String date, double latitude, double longitude)
+            throws ParseException {
+        TimeZone timeZone = TimeZone.getTimeZone(timeZoneId);
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US);
+        simpleDateFormat.setTimeZone(timeZone);
+
+        long noonMillis = simpleDateFormat.parse(date + " 12:00").getTime();
+        return SolarCalculator.getSunCycle(noonMillis, timeZone, latitude, longitude);
+    }
+
+    private static float getMinuteOfDay(String time) {
+        String[] parts = time.split(":");
+        return Integer.parseInt(parts[0]) * 60 + Integer.parseInt(parts[1]);
+    }
+}
@@ -0,0 +1,144 @@
+package co.adrianblan.lightly.suncycle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the optimized color paths give the same colors as the original color engine, which
+ * is kept as ReferenceSunCycleColorHandler.
+ *
+ * Every intensity pair is evaluated at every minute of a few representative sun cycles, both
+ * through the reference engine and through SunCycleColorSettings and FilterSchedule. The reference
+ * itself is checked against colors that were recorded from the original engine. Runs on a plain
+ * JVM in a few seconds, and prints its own runtime.
+ */
+public class SunCycleColorDifferentialTest {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    // Largest allowed difference per channel, the schedule interpolates with slightly different rounding
+    private static final int CHANNEL_TOLERANCE = 1;
+
+    // Sunrise and sunset positions [0, 1] of the sun cycles to test
+    private static final float[][] SUN_CYCLES = {
+            {0.25f, 0.75f}, // Equinox
+            {0.375f, 0.625f}, // Short winter day
+            {0.15f, 0.9f}, // Long summer day
+            {0.02f, 0.99f}, // Twilight transitions which wrap around midnight
+            {0f, 1f}, // Sun that never sets
+            {0.3126f, 0.8381f} // Positions that are not on whole minutes
+    };
+
+    // Colors recorded from the original engine with sunrise at 06:00 and sunset at 18:00, as the
+    // color filter intensity, brightness filter intensity, minute of the day and overlay color
+    private static final int[][] RECORDED_COLORS = {
+            {0, 0, 0, 0xb43f2000},
+            {50, 50, 0, 0x5a3f301f},
+            {100, 100, 0, 0x00000000},
+            {30, 70, 0, 0x726f4921},
+            {80, 20, 0, 0x9013110f},
+            {30, 70, 1400, 0x726f4921},
+            {30, 70, 435, 0x006f4921},
+            {30, 70, 345, 0x136f4921},
+            {30, 70, 1100, 0x196f4921},
+            {80, 20, 1115, 0x3813110f}
+    };
+
+    @Test
+    public void referenceMatchesRecordedColors() {
+        for(int[] recorded : RECORDED_COLORS) {
+            ReferenceSunCycleColorHandler reference = new ReferenceSunCycleColorHandler(recorded[0], recorded[1]);
+
+            assertEquals(getMessage(recorded[0], recorded[1]) + ", minute " + recorded[2], recorded[3],
+                    reference.getOverlayColor(recorded[2] / (float) MINUTES_PER_DAY, 0.25f, 0.75f));
+        }
+    }
+
+    @Test
+    public void derivedColorsMatchReference() {
+        long startTime = System.nanoTime();
+
+        for(int colorFilterIntensity = 0; colorFilterIntensity <= SunCycleColorSettings.INTENSITY_MAX; colorFilterIntensity++) {
+            for(int brightnessFilterIntensity = 0; brightnessFilterIntensity <= SunCycleColorSettings.INTENSITY_MAX; brightnessFilterIntensity++) {
+                ReferenceSunCycleColorHandler reference =
+                        new ReferenceSunCycleColorHandler(colorFilterIntensity, brightnessFilterIntensity);
+                SunCycleColorSettings settings = SunCycleColorSettings.of(colorFilterIntensity, brightnessFilterIntensity);
+                String message = getMessage(colorFilterIntensity, brightnessFilterIntensity);
+
+                assertEquals(message, reference.getOverlayColorMax(), settings.getOverlayColorMax());
+                assertEquals(message, reference.getColorFilterColor(), settings.getColorFilterColor());
+                assertEquals(message, reference.getBrightnessFilterColor(), settings.getBrightnessFilterColor());
+                assertEquals(message, reference.getColorTemperature(), settings.getColorTemperature());
+                assertEquals(message, reference.getBrightnessPercent(), settings.getBrightnessPercent());
+            }
+        }
+
+        printRuntime("Derived colors", startTime);
+    }
+
+    @Test
+    public void scheduleColorsMatchReference() {
+        long startTime = System.nanoTime();
+        long evaluations = 0;
+
+        for(float[] sunCycle : SUN_CYCLES) {
+            float sunrise = sunCycle[0];
+            float sunset = sunCycle[1];
+            FilterSchedule schedule = new SunCycleScheduleGenerator(sunrise, sunset,
+                    SunCycleColorHandler.TWILIGHT_TRANSITION_DISTANCE).generate();
+
+            for(int colorFilterIntensity = 0; colorFilterIntensity <= SunCycleColorSettings.INTENSITY_MAX; colorFilterIntensity++) {
+                for(int brightnessFilterIntensity = 0; brightnessFilterIntensity <= SunCycleColorSettings.INTENSITY_MAX; brightnessFilterIntensity++) {
+                    ReferenceSunCycleColorHandler reference =
+                            new ReferenceSunCycleColorHandler(colorFilterIntensity, brightnessFilterIntensity);
+                    SunCycleColorSettings settings = SunCycleColorSettings.of(colorFilterIntensity, brightnessFilterIntensity);
+
+                    for(int minute = 0; minute <= MINUTES_PER_DAY; minute++) {
+                        float position = minute / (float) MINUTES_PER_DAY;
+
+                        int expected = reference.getOverlayColor(position, sunrise, sunset);
+                        int actual = schedule.getOverlayColor(position, settings);
+
+                        if(!isWithinTolerance(expected, actual)) {
+                            fail(getMessage(colorFilterIntensity, brightnessFilterIntensity) + ", sunrise " + sunrise
+                                    + ", sunset " + sunset + ", minute " + minute + ": expected "
+                                    + Integer.toHexString(expected) + " but was " + Integer.toHexString(actual));
+                        }
+
+                        evaluations++;
+                    }
+                }
+            }
+        }
+
+        printRuntime("Schedule colors (" + evaluations + " evaluations)", startTime);
+    }
+
+    /** Returns whether all channels are within the tolerance, where fully transparent colors are all equal */
+    private static boolean isWithinTolerance(int expected, int actual) {
+        if((expected >>> 24) == 0 && (actual >>> 24) == 0) {
+            return true;
+        }
+
+        for(int shift = 0; shift < 32; shift += 8) {
+            int difference = Math.abs(((expected >>> shift) & 0xFF) - ((actual >>> shift) & 0xFF));
+
+            if(difference > CHANNEL_TOLERANCE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String getMessage(int colorFilterIntensity, int brightnessFilterIntensity) {
+        return "Color filter intensity " + colorFilterIntensity + ", brightness filter intensity "
+                + brightnessFilterIntensity;
+    }
+
+    private static void printRuntime(String name, long startTime) {
+        System.out.println(name + " matched the reference in " + (System.nanoTime() - startTime) / 1000000 + " ms");
+    }
+}
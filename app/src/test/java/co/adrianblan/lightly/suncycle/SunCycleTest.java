@@ -0,0 +1,89 @@
+package co.adrianblan.lightly.suncycle;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import co.adrianblan.lightly.data.SunriseSunsetData;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the UTC times of sunrise-sunset.org are moved to the local day, and that a twilight
+ * which falls on another local day is clamped to today.
+ */
+public class SunCycleTest {
+
+    private static final float MINUTE_POSITION = 1 / (24f * 60f);
+
+    @Test
+    public void utcTimesAreMovedToLocalTime() throws ParseException {
+        SunCycle sunCycle = getSunCycle("Europe/Stockholm", "2016-12-21 12:00", "06:47:00 AM", "02:43:00 PM");
+
+        assertPosition("07:47", sunCycle.getSunrisePositionHorizontal());
+        assertPosition("15:43", sunCycle.getSunsetPositionHorizontal());
+        assertPosition("12:00", sunCycle.getSunPositionHorizontal());
+    }
+
+    @Test
+    public void utcTimesOfThePreviousUtcDay() throws ParseException {
+
+        // In Tokyo the twilight begins on the previous day in UTC
+        SunCycle sunCycle = getSunCycle("Asia/Tokyo", "2016-06-21 12:00", "07:54:00 PM", "10:30:00 AM");
+
+        assertPosition("04:54", sunCycle.getSunrisePositionHorizontal());
+        assertPosition("19:30", sunCycle.getSunsetPositionHorizontal());
+    }
+
+    @Test
+    public void sunsetAfterMidnightIsClampedToTheEndOfToday() throws ParseException {
+
+        // The twilight ends at 00:30 of the next local day
+        SunCycle sunCycle = getSunCycle("GMT-05:00", "2016-06-21 12:00", "10:00:00 AM", "05:30:00 AM");
+
+        assertPosition("05:00", sunCycle.getSunrisePositionHorizontal());
+        assertEquals(1f, sunCycle.getSunsetPositionHorizontal(), 0f);
+    }
+
+    @Test
+    public void sunriseBeforeMidnightIsClampedToTheStartOfToday() throws ParseException {
+
+        // The twilight begins at 23:30 of the previous local day
+        SunCycle sunCycle = getSunCycle("GMT+05:00", "2016-06-21 12:00", "06:30:00 PM", "01:00:00 PM");
+
+        assertEquals(0f, sunCycle.getSunrisePositionHorizontal(), 0f);
+        assertPosition("18:00", sunCycle.getSunsetPositionHorizontal());
+    }
+
+    @Test
+    public void dummySunCycleIsInLocalTime() {
+        SunCycle sunCycle = SunCycle.getDummySunCycle(new Date());
+
+        assertPosition("08:00", sunCycle.getSunrisePositionHorizontal());
+        assertPosition("17:00", sunCycle.getSunsetPositionHorizontal());
+    }
+
+    /** Returns the sun cycle of UTC twilights, at a local time "yyyy-MM-dd HH:mm" in a time zone */
+    private static SunCycle getSunCycle(String timeZoneId, String localTime, String civilTwilightBegin,
+                                        String civilTwilightEnd) throws ParseException {
+        TimeZone timeZone = TimeZone.getTimeZone(timeZoneId);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US);
+        dateFormat.setTimeZone(timeZone);
+
+        return new SunCycle(dateFormat.parse(localTime), timeZone,
+                new SunriseSunsetData(civilTwilightBegin, civilTwilightEnd));
+    }
+
+    /** Asserts that a position [0, 1] is at a local time "HH:mm" */
+    private static void assertPosition(String expectedTime, float position) {
+        String[] parts = expectedTime.split(":");
+        float expectedPosition = (Integer.parseInt(parts[0]) * 60 + Integer.parseInt(parts[1])) * MINUTE_POSITION;
+
+        assertEquals("Expected " + expectedTime + " but was " + SunCycle.getTimeFromPosition(position),
+                expectedPosition, position, MINUTE_POSITION / 2);
+    }
+}
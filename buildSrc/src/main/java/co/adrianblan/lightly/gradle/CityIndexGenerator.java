@@ -0,0 +1,225 @@
+package co.adrianblan.lightly.gradle;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.adrianblan.lightly.location.CityIndex;
+
+/**
+ * Generates the binary CityIndex from a CSV of cities, with one "name,country,latitude,longitude"
+ * per line. Lines starting with # are comments.
+ *
+ * The coordinates are quantized to shorts, the countries and names are deduplicated, and the
+ * cities are ordered as the implicit k-d tree that CityIndex searches.
+ */
+public class CityIndexGenerator {
+
+    private static class City {
+        final String name;
+        final int country;
+        final short latitude;
+        final short longitude;
+
+        City(String name, int country, short latitude, short longitude) {
+            this.name = name;
+            this.country = country;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    private static final Comparator<City> LATITUDE_COMPARATOR = new Comparator<City>() {
+        @Override
+        public int compare(City first, City second) {
+            return first.latitude != second.latitude ? first.latitude - second.latitude
+                    : first.longitude - second.longitude;
+        }
+    };
+
+    private static final Comparator<City> LONGITUDE_COMPARATOR = new Comparator<City>() {
+        @Override
+        public int compare(City first, City second) {
+            return first.longitude != second.longitude ? first.longitude - second.longitude
+                    : first.latitude - second.latitude;
+        }
+    };
+
+    private final List<City> cities = new ArrayList<>();
+    private final List<String> countries = new ArrayList<>();
+    private final Map<String, Integer> countryIndices = new HashMap<>();
+
+    /** Reads the cities of a CSV file */
+    public void read(File citiesFile) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(citiesFile), "UTF-8"));
+
+        try {
+            String line;
+            int lineNumber = 0;
+
+            while((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+
+                if(line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split(",");
+
+                if(fields.length != 4) {
+                    throw new IOException(citiesFile + ":" + lineNumber + ": expected name,country,latitude,longitude");
+                }
+
+                try {
+                    addCity(fields[0].trim(), fields[1].trim(), Double.parseDouble(fields[2]),
+                            Double.parseDouble(fields[3]));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(citiesFile + ":" + lineNumber + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Adds a city, with its position in degrees */
+    public void addCity(String name, String country, double latitude, double longitude) {
+        if(Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            throw new IllegalArgumentException("Position out of range: " + latitude + ", " + longitude);
+        }
+
+        Integer countryIndex = countryIndices.get(country);
+
+        if(countryIndex == null) {
+            countryIndex = countries.size();
+            countries.add(country);
+            countryIndices.put(country, countryIndex);
+        }
+
+        cities.add(new City(name, countryIndex, quantize(latitude), quantize(longitude)));
+    }
+
+    /** Writes the index into a directory, and returns the file */
+    public File generate(File outputDirectory, String fileName) throws IOException {
+        if(!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Could not create " + outputDirectory);
+        }
+
+        File indexFile = new File(outputDirectory, fileName);
+        FileOutputStream outputStream = new FileOutputStream(indexFile);
+
+        try {
+            outputStream.write(toByteArray());
+        } finally {
+            outputStream.close();
+        }
+
+        return indexFile;
+    }
+
+    /** Returns the index in the format that CityIndex reads */
+    public byte[] toByteArray() throws IOException {
+        List<City> tree = getTree();
+
+        // The strings are deduplicated, since every country is shared by many cities
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream stringOutput = new DataOutputStream(stringBytes);
+        Map<String, Integer> stringOffsets = new HashMap<>();
+
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(indexBytes);
+
+        output.writeInt(CityIndex.MAGIC);
+        output.writeInt(CityIndex.VERSION);
+        output.writeInt(tree.size());
+        output.writeInt(countries.size());
+        output.writeInt(CityIndex.HEADER_SIZE + tree.size() * CityIndex.CITY_SIZE
+                + countries.size() * CityIndex.COUNTRY_SIZE);
+
+        for(City city : tree) {
+            output.writeShort(city.latitude);
+            output.writeShort(city.longitude);
+            output.writeShort(city.country);
+            output.writeInt(getStringOffset(city.name, stringOffsets, stringOutput));
+        }
+
+        for(String country : countries) {
+            output.writeInt(getStringOffset(country, stringOffsets, stringOutput));
+        }
+
+        stringOutput.flush();
+        stringBytes.writeTo(output);
+        output.flush();
+
+        return indexBytes.toByteArray();
+    }
+
+    public int getCityCount() {
+        return cities.size();
+    }
+
+    /** Adds the cities to a TwilightTableGenerator in the order of the index, so that both share the city numbers */
+    public void addCitiesTo(TwilightTableGenerator twilightTableGenerator) {
+        for(City city : getTree()) {
+            twilightTableGenerator.addLocation(city.latitude / (double) CityIndex.COORDINATE_SCALE,
+                    city.longitude / (double) CityIndex.COORDINATE_SCALE);
+        }
+    }
+
+    /** Returns the cities in the order of the k-d tree */
+    private List<City> getTree() {
+        List<City> tree = new ArrayList<>(cities);
+        buildTree(tree, 0, tree.size(), 0);
+        return tree;
+    }
+
+    /** Orders the cities in [start, end) as a k-d tree, split by the median on the axis of the depth */
+    private static void buildTree(List<City> cities, int start, int end, int depth) {
+        if(end - start <= 1) {
+            return;
+        }
+
+        Collections.sort(cities.subList(start, end), depth % 2 == 0 ? LATITUDE_COMPARATOR : LONGITUDE_COMPARATOR);
+
+        int middle = (start + end) >>> 1;
+        buildTree(cities, start, middle, depth + 1);
+        buildTree(cities, middle + 1, end, depth + 1);
+    }
+
+    /** Returns the offset of the string, writing it first if it has not been written yet */
+    private static int getStringOffset(String string, Map<String, Integer> stringOffsets,
+                                       DataOutputStream stringOutput) throws IOException {
+        Integer offset = stringOffsets.get(string);
+
+        if(offset == null) {
+            byte[] bytes = string.getBytes("UTF-8");
+
+            if(bytes.length > 0xFFFF) {
+                throw new IOException("Name too long: " + string);
+            }
+
+            offset = stringOutput.size();
+            stringOutput.writeShort(bytes.length);
+            stringOutput.write(bytes);
+            stringOffsets.put(string, offset);
+        }
+
+        return offset;
+    }
+
+    private static short quantize(double degrees) {
+        return (short) Math.round(degrees * CityIndex.COORDINATE_SCALE);
+    }
+}
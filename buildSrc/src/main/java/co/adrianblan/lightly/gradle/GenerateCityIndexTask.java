@@ -0,0 +1,54 @@
+package co.adrianblan.lightly.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+
+import co.adrianblan.lightly.location.CityIndex;
+
+/**
+ * Gradle task which generates the binary city index into an assets directory of the app, together
+ * with the twilights of every day of the year for the same cities.
+ */
+public class GenerateCityIndexTask extends DefaultTask {
+
+    private File citiesFile;
+    private File outputDirectory;
+
+    @InputFile
+    public File getCitiesFile() {
+        return citiesFile;
+    }
+
+    public void setCitiesFile(File citiesFile) {
+        this.citiesFile = citiesFile;
+    }
+
+    @OutputDirectory
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    @TaskAction
+    public void generate() throws IOException {
+        CityIndexGenerator generator = new CityIndexGenerator();
+        generator.read(citiesFile);
+
+        File indexFile = generator.generate(outputDirectory, CityIndex.ASSET_NAME);
+        getLogger().info("Generated " + indexFile + " with " + generator.getCityCount() + " cities");
+
+        TwilightTableGenerator twilightTableGenerator = new TwilightTableGenerator();
+        generator.addCitiesTo(twilightTableGenerator);
+
+        File twilightFile = twilightTableGenerator.generate(outputDirectory, CityIndex.TWILIGHT_ASSET_NAME);
+        getLogger().info("Generated " + twilightFile + ": " + twilightTableGenerator.getReport());
+    }
+}
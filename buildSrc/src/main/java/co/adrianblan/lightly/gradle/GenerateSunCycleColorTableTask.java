@@ -0,0 +1,31 @@
+package co.adrianblan.lightly.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Gradle task which generates SunCycleColorTable into a source directory of the app.
+ */
+public class GenerateSunCycleColorTableTask extends DefaultTask {
+
+    private File outputDirectory;
+
+    @OutputDirectory
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    @TaskAction
+    public void generate() throws IOException {
+        File sourceFile = new SunCycleColorTableGenerator().generate(outputDirectory);
+        getLogger().info("Generated " + sourceFile);
+    }
+}
@@ -0,0 +1,56 @@
+package co.adrianblan.lightly.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Gradle task which generates a TwilightTable for a grid of locations over the earth, and logs the
+ * throughput of the generation.
+ */
+public class GenerateTwilightTableTask extends DefaultTask {
+
+    private double gridStepDegrees = 1.0;
+    private String fileName = "grid.twl";
+    private File outputDirectory;
+
+    @Input
+    public double getGridStepDegrees() {
+        return gridStepDegrees;
+    }
+
+    public void setGridStepDegrees(double gridStepDegrees) {
+        this.gridStepDegrees = gridStepDegrees;
+    }
+
+    @Input
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    @OutputDirectory
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    @TaskAction
+    public void generate() throws IOException {
+        TwilightTableGenerator generator = new TwilightTableGenerator();
+        generator.addGrid(gridStepDegrees);
+
+        File tableFile = generator.generate(outputDirectory, fileName);
+        getLogger().lifecycle(generator.getReport() + ", " + tableFile.length() + " bytes in " + tableFile);
+    }
+}
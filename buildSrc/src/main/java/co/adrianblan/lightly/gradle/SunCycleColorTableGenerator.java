@@ -0,0 +1,165 @@
+package co.adrianblan.lightly.gradle;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import co.adrianblan.lightly.suncycle.SunCycleColorHandler;
+
+/**
+ * Generates SunCycleColorTable, which holds every color that SunCycleColorHandler can derive from
+ * the two intensities of the SeekBars.
+ *
+ * The colors which only depend on one intensity are stored as plain arrays. The maximum overlay
+ * colors depend on both, and are stored as one array per color intensity which is created in a
+ * method of its own, since an array initializer of that size would not fit in a single method.
+ */
+public class SunCycleColorTableGenerator {
+
+    public static final String PACKAGE_NAME = "co.adrianblan.lightly.suncycle";
+    public static final String CLASS_NAME = "SunCycleColorTable";
+
+    private static final int INTENSITY_MAX = 100;
+    private static final int VALUES_PER_LINE = 8;
+
+    /** Writes the generated source file into a source directory, and returns the file */
+    public File generate(File sourceDirectory) throws IOException {
+        File packageDirectory = new File(sourceDirectory, PACKAGE_NAME.replace('.', File.separatorChar));
+
+        if(!packageDirectory.isDirectory() && !packageDirectory.mkdirs()) {
+            throw new IOException("Could not create " + packageDirectory);
+        }
+
+        File sourceFile = new File(packageDirectory, CLASS_NAME + ".java");
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(sourceFile), "UTF-8"));
+
+        try {
+            writeSource(writer);
+        } finally {
+            writer.close();
+        }
+
+        if(writer.checkError()) {
+            throw new IOException("Could not write " + sourceFile);
+        }
+
+        return sourceFile;
+    }
+
+    private void writeSource(PrintWriter writer) {
+        int intensityCount = INTENSITY_MAX + 1;
+
+        int[] colorFilterColors = new int[intensityCount];
+        int[] colorTemperatures = new int[intensityCount];
+        int[] brightnessFilterColors = new int[intensityCount];
+        int[] brightnessPercents = new int[intensityCount];
+        int[][] overlayColorMax = new int[intensityCount][intensityCount];
+
+        for(int colorFilterIntensity = 0; colorFilterIntensity <= INTENSITY_MAX; colorFilterIntensity++) {
+            for(int brightnessFilterIntensity = 0; brightnessFilterIntensity <= INTENSITY_MAX; brightnessFilterIntensity++) {
+                SunCycleColorHandler sunCycleColorHandler =
+                        new SunCycleColorHandler(colorFilterIntensity, brightnessFilterIntensity);
+
+                overlayColorMax[colorFilterIntensity][brightnessFilterIntensity] =
+                        sunCycleColorHandler.getOverlayColorMax();
+
+                // The filter colors only depend on their own intensity
+                if(brightnessFilterIntensity == 0) {
+                    colorFilterColors[colorFilterIntensity] = sunCycleColorHandler.getColorFilterWrapper().getColor();
+                    colorTemperatures[colorFilterIntensity] = sunCycleColorHandler.getColorTemperature();
+                }
+
+                if(colorFilterIntensity == 0) {
+                    brightnessFilterColors[brightnessFilterIntensity] =
+                            sunCycleColorHandler.getBrightnessFilterWrapper().getColor();
+                    brightnessPercents[brightnessFilterIntensity] = sunCycleColorHandler.getBrightnessPercent();
+                }
+            }
+        }
+
+        writer.println("package " + PACKAGE_NAME + ";");
+        writer.println();
+        writer.println("/**");
+        writer.println(" * Every color that can be derived from the intensities [0, " + INTENSITY_MAX + "] of the filters.");
+        writer.println(" *");
+        writer.println(" * Generated at build time from SunCycleColorHandler, do not edit.");
+        writer.println(" */");
+        writer.println("final class " + CLASS_NAME + " {");
+        writer.println();
+        writer.println("    private static final int INTENSITY_COUNT = " + intensityCount + ";");
+        writer.println();
+        writeIntArray(writer, "COLOR_FILTER_COLORS", colorFilterColors, true);
+        writeIntArray(writer, "COLOR_TEMPERATURES", colorTemperatures, false);
+        writeIntArray(writer, "BRIGHTNESS_FILTER_COLORS", brightnessFilterColors, true);
+        writeIntArray(writer, "BRIGHTNESS_PERCENTS", brightnessPercents, false);
+
+        writer.println("    // One row per color filter intensity, with a column per brightness filter intensity");
+        writer.println("    private static final int[][] OVERLAY_COLOR_MAX = {");
+        for(int colorFilterIntensity = 0; colorFilterIntensity <= INTENSITY_MAX; colorFilterIntensity++) {
+            writer.print("            " + getOverlayColorMaxRowName(colorFilterIntensity) + "()");
+            writer.println(colorFilterIntensity < INTENSITY_MAX ? "," : "");
+        }
+        writer.println("    };");
+        writer.println();
+        writer.println("    private " + CLASS_NAME + "() {}");
+        writer.println();
+        writer.println("    static int getColorFilterColor(int colorFilterIntensity) {");
+        writer.println("        return COLOR_FILTER_COLORS[colorFilterIntensity];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    static int getColorTemperature(int colorFilterIntensity) {");
+        writer.println("        return COLOR_TEMPERATURES[colorFilterIntensity];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    static int getBrightnessFilterColor(int brightnessFilterIntensity) {");
+        writer.println("        return BRIGHTNESS_FILTER_COLORS[brightnessFilterIntensity];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    static int getBrightnessPercent(int brightnessFilterIntensity) {");
+        writer.println("        return BRIGHTNESS_PERCENTS[brightnessFilterIntensity];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    static int getOverlayColorMax(int colorFilterIntensity, int brightnessFilterIntensity) {");
+        writer.println("        return OVERLAY_COLOR_MAX[colorFilterIntensity][brightnessFilterIntensity];");
+        writer.println("    }");
+
+        for(int colorFilterIntensity = 0; colorFilterIntensity <= INTENSITY_MAX; colorFilterIntensity++) {
+            writer.println();
+            writer.println("    private static int[] " + getOverlayColorMaxRowName(colorFilterIntensity) + "() {");
+            writer.println("        return new int[] {");
+            writeValues(writer, overlayColorMax[colorFilterIntensity], true, "               ");
+            writer.println("        };");
+            writer.println("    }");
+        }
+
+        writer.println("}");
+    }
+
+    private static String getOverlayColorMaxRowName(int colorFilterIntensity) {
+        return "getOverlayColorMaxRow" + colorFilterIntensity;
+    }
+
+    private static void writeIntArray(PrintWriter writer, String name, int[] values, boolean isHex) {
+        writer.println("    private static final int[] " + name + " = {");
+        writeValues(writer, values, isHex, "           ");
+        writer.println("    };");
+        writer.println();
+    }
+
+    /** Writes the values of an array initializer, as int literals which are never escaped by javac */
+    private static void writeValues(PrintWriter writer, int[] values, boolean isHex, String indent) {
+        for(int i = 0; i < values.length; i += VALUES_PER_LINE) {
+            writer.print(indent);
+
+            for(int j = i; j < Math.min(i + VALUES_PER_LINE, values.length); j++) {
+                writer.print(isHex ? String.format(Locale.US, " 0x%08x", values[j]) : " " + values[j]);
+                writer.print(j < values.length - 1 ? "," : "");
+            }
+
+            writer.println();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package co.adrianblan.lightly.gradle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import co.adrianblan.lightly.suncycle.TwilightCalculator;
+import co.adrianblan.lightly.suncycle.TwilightTable;
+
+/**
+ * Generates a binary TwilightTable with the civil twilights of every day of the year, for a list
+ * of locations or a grid of them.
+ *
+ * The locations are independent, so they are split into ranges which are calculated and encoded
+ * in parallel on a ForkJoinPool, and only concatenated at the end. The throughput is reported, and
+ * a grid of every degree of the earth takes seconds. Also runs on its own as
+ *
+ *   java -cp buildSrc/build/classes/main co.adrianblan.lightly.gradle.TwilightTableGenerator out.twl 1.0
+ *
+ * where the last argument is the step of the grid in degrees.
+ */
+public class TwilightTableGenerator {
+
+    // Locations that are small enough to calculate on one thread, instead of splitting them further
+    private static final int LOCATIONS_PER_TASK = 64;
+
+    private short[] latitudes = new short[64];
+    private short[] longitudes = new short[64];
+    private int locationCount;
+
+    private long generateNanos;
+    private int parallelism;
+
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("Usage: TwilightTableGenerator <output file> <grid step in degrees>");
+            System.exit(1);
+        }
+
+        TwilightTableGenerator generator = new TwilightTableGenerator();
+        generator.addGrid(Double.parseDouble(args[1]));
+
+        File outputFile = new File(args[0]);
+        File parentDirectory = outputFile.getAbsoluteFile().getParentFile();
+        generator.generate(parentDirectory, outputFile.getName());
+
+        System.out.println(generator.getReport() + ", " + outputFile.length() + " bytes");
+    }
+
+    /** Adds a location, with its position in degrees */
+    public void addLocation(double latitude, double longitude) {
+        if(Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            throw new IllegalArgumentException("Position out of range: " + latitude + ", " + longitude);
+        }
+
+        if(locationCount == latitudes.length) {
+            latitudes = Arrays.copyOf(latitudes, 2 * locationCount);
+            longitudes = Arrays.copyOf(longitudes, 2 * locationCount);
+        }
+
+        latitudes[locationCount] = quantize(latitude);
+        longitudes[locationCount] = quantize(longitude);
+        locationCount++;
+    }
+
+    /** Adds every location of a grid over the earth, with a step in degrees */
+    public void addGrid(double stepDegrees) {
+        if(stepDegrees <= 0) {
+            throw new IllegalArgumentException("Grid step must be positive: " + stepDegrees);
+        }
+
+        for(double latitude = -90; latitude <= 90; latitude += stepDegrees) {
+            for(double longitude = -180; longitude < 180; longitude += stepDegrees) {
+                addLocation(latitude, longitude);
+            }
+        }
+    }
+
+    public int getLocationCount() {
+        return locationCount;
+    }
+
+    /** Writes the table into a directory, calculated on every core, and returns the file */
+    public File generate(File outputDirectory, String fileName) throws IOException {
+        if(!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Could not create " + outputDirectory);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        File tableFile = new File(outputDirectory, fileName);
+        FileOutputStream outputStream = new FileOutputStream(tableFile);
+
+        try {
+            outputStream.write(toByteArray(pool));
+        } finally {
+            outputStream.close();
+            pool.shutdown();
+        }
+
+        return tableFile;
+    }
+
+    /** Returns the table in the format that TwilightTable reads, calculated on the pool */
+    public byte[] toByteArray(ForkJoinPool pool) throws IOException {
+        long startTime = System.nanoTime();
+
+        byte[][] records = new byte[locationCount][];
+        pool.invoke(new RecordTask(records, 0, locationCount));
+
+        ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(tableBytes);
+
+        output.writeInt(TwilightTable.MAGIC);
+        output.writeInt(TwilightTable.VERSION);
+        output.writeInt(locationCount);
+        output.writeInt(TwilightTable.DAYS_PER_YEAR);
+        output.writeInt(TwilightTable.HEADER_SIZE + locationCount * TwilightTable.LOCATION_SIZE);
+
+        int recordOffset = 0;
+
+        for(int i = 0; i < locationCount; i++) {
+            output.writeShort(latitudes[i]);
+            output.writeShort(longitudes[i]);
+            output.writeInt(recordOffset);
+            recordOffset += records[i].length;
+        }
+
+        for(byte[] record : records) {
+            output.write(record);
+        }
+
+        output.flush();
+
+        generateNanos = System.nanoTime() - startTime;
+        parallelism = pool.getParallelism();
+
+        return tableBytes.toByteArray();
+    }
+
+    /** Returns the throughput of the last generation */
+    public String getReport() {
+        long days = (long) locationCount * TwilightTable.DAYS_PER_YEAR;
+        double seconds = generateNanos / 1e9;
+
+        return String.format(Locale.US, "Twilights of %d locations x %d days in %.0f ms on %d threads, %.1f million days per second",
+                locationCount, TwilightTable.DAYS_PER_YEAR, seconds * 1000, parallelism, days / seconds / 1e6);
+    }
+
+    /** Calculates and encodes the records of the locations in [start, end), splitting the range in halves */
+    private class RecordTask extends RecursiveAction {
+
+        private final byte[][] records;
+        private final int start;
+        private final int end;
+
+        RecordTask(byte[][] records, int start, int end) {
+            this.records = records;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start > LOCATIONS_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new RecordTask(records, start, middle), new RecordTask(records, middle, end));
+                return;
+            }
+
+            // Shared by the locations of this task, which run on one thread
+            long[] times = new long[2];
+            NibbleWriter writer = new NibbleWriter();
+
+            for(int i = start; i < end; i++) {
+                records[i] = encodeRecord(latitudes[i] / (double) TwilightTable.COORDINATE_SCALE,
+                        longitudes[i] / (double) TwilightTable.COORDINATE_SCALE, times, writer);
+            }
+        }
+    }
+
+    /** Calculates the twilights of every day at a location, and encodes them as a record */
+    private static byte[] encodeRecord(double latitude, double longitude, long[] times, NibbleWriter writer) {
+        writer.reset();
+
+        int previousBegin = Integer.MIN_VALUE;
+        int previousEnd = Integer.MIN_VALUE;
+
+        for(int day = 0; day < TwilightTable.DAYS_PER_YEAR; day++) {
+            long meanMidnightMillis = TwilightTable.getMeanMidnightMillis(
+                    TwilightTable.YEAR_START_MILLIS + day * TwilightCalculator.MILLIS_PER_DAY, longitude);
+            TwilightCalculator.getTwilight(meanMidnightMillis, latitude, longitude, times);
+
+            int begin = getMinutes(times[0] - meanMidnightMillis);
+            int end = getMinutes(times[1] - meanMidnightMillis);
+
+            writer.writeValue(begin, previousBegin);
+            writer.writeValue(end, previousEnd);
+            previousBegin = begin;
+            previousEnd = end;
+        }
+
+        return writer.toByteArray();
+    }
+
+    /** Rounds milliseconds to minutes, clamped to a day */
+    private static int getMinutes(long millis) {
+        int minutes = (int) Math.round(millis / 60000.0);
+        return Math.max(0, Math.min(minutes, TwilightTable.MINUTES_PER_DAY));
+    }
+
+    private static short quantize(double degrees) {
+        return (short) Math.round(degrees * TwilightTable.COORDINATE_SCALE);
+    }
+
+    /** Writes values as nibbles of their differences, escaping the differences that do not fit */
+    static class NibbleWriter {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int pendingNibble = -1;
+
+        void reset() {
+            bytes.reset();
+            pendingNibble = -1;
+        }
+
+        void writeValue(int value, int previousValue) {
+            long delta = (long) value - previousValue;
+
+            if(Math.abs(delta) <= TwilightTable.MAX_NIBBLE_DELTA) {
+                writeNibble((int) delta & 0xF);
+            } else {
+                writeNibble(TwilightTable.ESCAPE_NIBBLE);
+                writeNibble((value >> 12) & 0xF);
+                writeNibble((value >> 8) & 0xF);
+                writeNibble((value >> 4) & 0xF);
+                writeNibble(value & 0xF);
+            }
+        }
+
+        private void writeNibble(int nibble) {
+            if(pendingNibble < 0) {
+                pendingNibble = nibble;
+            } else {
+                bytes.write((pendingNibble << 4) | nibble);
+                pendingNibble = -1;
+            }
+        }
+
+        /** Returns the nibbles, where an odd count is padded with a zero nibble */
+        byte[] toByteArray() {
+            if(pendingNibble >= 0) {
+                writeNibble(0);
+            }
+
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package co.adrianblan.lightly.gradle;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import co.adrianblan.lightly.location.CityIndex;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the nearest cities of a generated CityIndex against a search of every city, near the
+ * antimeridian and the poles where the k-d tree has to search across the edges of its splits.
+ */
+public class CityIndexGeneratorTest {
+
+    // The index and the brute force round their distances in different orders
+    private static final float TOLERANCE = 1e-4f;
+
+    @Test
+    public void randomCitiesMatchBruteForce() throws IOException {
+        Random random = new Random(42);
+        CityIndexGenerator generator = new CityIndexGenerator();
+
+        for(int i = 0; i < 2000; i++) {
+            generator.addCity("City " + i, "Country " + (i % 50), random.nextDouble() * 180 - 90,
+                    random.nextDouble() * 360 - 180);
+        }
+
+        CityIndex cityIndex = getCityIndex(generator);
+
+        for(int i = 0; i < 2000; i++) {
+            assertNearest(cityIndex, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+        }
+    }
+
+    @Test
+    public void nearestCityAcrossTheAntimeridian() throws IOException {
+        Random random = new Random(7);
+        CityIndexGenerator generator = new CityIndexGenerator();
+
+        // Most cities are far from the antimeridian, so that it lies deep in the outer subtrees
+        for(int i = 0; i < 500; i++) {
+            generator.addCity("City " + i, "Country", random.nextDouble() * 120 - 60, random.nextDouble() * 300 - 150);
+        }
+
+        generator.addCity("Suva", "Fiji", -18.14, 178.44);
+        generator.addCity("Apia", "Samoa", -13.83, -171.76);
+        generator.addCity("Anadyr", "Russia", 64.73, 177.51);
+        generator.addCity("Date Line East", "Nowhere", 0, 180);
+        generator.addCity("Date Line West", "Nowhere", 10, -180);
+
+        CityIndex cityIndex = getCityIndex(generator);
+
+        assertEquals("Suva", cityIndex.getName(cityIndex.findNearest(-14, -179.9)));
+        assertEquals("Date Line East", cityIndex.getName(cityIndex.findNearest(0, -179.9)));
+        assertEquals("Date Line West", cityIndex.getName(cityIndex.findNearest(10, 179.9)));
+        assertEquals("Anadyr", cityIndex.getName(cityIndex.findNearest(64, -179.5)));
+
+        for(double latitude = -80; latitude <= 80; latitude += 2.5) {
+            for(double longitude : new double[] { -180, -179.99, -179.5, -175, 175, 179.5, 179.99, 180 }) {
+                assertNearest(cityIndex, latitude, longitude);
+            }
+        }
+    }
+
+    @Test
+    public void nearestCityNearThePoles() throws IOException {
+        Random random = new Random(13);
+        CityIndexGenerator generator = new CityIndexGenerator();
+
+        for(int i = 0; i < 500; i++) {
+            double latitude = 80 + random.nextDouble() * 10;
+            generator.addCity("North " + i, "Arctic", latitude, random.nextDouble() * 360 - 180);
+            generator.addCity("South " + i, "Antarctica", -latitude, random.nextDouble() * 360 - 180);
+        }
+
+        generator.addCity("North Pole", "Arctic", 90, 0);
+        generator.addCity("South Pole", "Antarctica", -90, 180);
+
+        CityIndex cityIndex = getCityIndex(generator);
+
+        for(int i = 0; i < 1000; i++) {
+            double latitude = 85 + random.nextDouble() * 5;
+            assertNearest(cityIndex, latitude, random.nextDouble() * 360 - 180);
+            assertNearest(cityIndex, -latitude, random.nextDouble() * 360 - 180);
+        }
+
+        assertNearest(cityIndex, 90, 123);
+        assertNearest(cityIndex, -90, -45);
+    }
+
+    @Test
+    public void tiesAtTheSplitsMatchBruteForce() throws IOException {
+        CityIndexGenerator generator = new CityIndexGenerator();
+
+        // A grid with duplicates puts many cities on every split, and many queries exactly on them
+        for(int latitude = -80; latitude <= 80; latitude += 20) {
+            for(int longitude = -180; longitude <= 180; longitude += 30) {
+                generator.addCity(latitude + "," + longitude, "Grid", latitude, longitude);
+                generator.addCity(latitude + "," + longitude + " again", "Grid", latitude, longitude);
+            }
+        }
+
+        CityIndex cityIndex = getCityIndex(generator);
+
+        for(int latitude = -90; latitude <= 90; latitude += 5) {
+            for(int longitude = -180; longitude <= 180; longitude += 15) {
+                assertNearest(cityIndex, latitude, longitude);
+            }
+        }
+    }
+
+    @Test
+    public void namesAndCountriesRoundTrip() throws IOException {
+        CityIndexGenerator generator = new CityIndexGenerator();
+        generator.addCity("Malmö", "Sverige", 55.61, 13.00);
+        generator.addCity("São Paulo", "Brasil", -23.55, -46.63);
+
+        CityIndex cityIndex = getCityIndex(generator);
+        int city = cityIndex.findNearest(55.6, 13.0);
+
+        assertEquals(2, cityIndex.size());
+        assertEquals("Malmö", cityIndex.getName(city));
+        assertEquals("Sverige", cityIndex.getCountry(city));
+        assertEquals(55.61f, cityIndex.getLatitude(city), 0f);
+        assertEquals(13.00f, cityIndex.getLongitude(city), 0f);
+    }
+
+    private static CityIndex getCityIndex(CityIndexGenerator generator) throws IOException {
+        return new CityIndex(ByteBuffer.wrap(generator.toByteArray()));
+    }
+
+    /** Asserts that the index finds a city as near as the nearest of all cities */
+    private static void assertNearest(CityIndex cityIndex, double latitude, double longitude) {
+        float nearestDistance = Float.MAX_VALUE;
+
+        for(int city = 0; city < cityIndex.size(); city++) {
+            nearestDistance = Math.min(nearestDistance, getDistance(cityIndex, city, latitude, longitude));
+        }
+
+        int nearestCity = cityIndex.findNearest(latitude, longitude);
+
+        assertEquals("Nearest city to " + latitude + ", " + longitude, nearestDistance,
+                getDistance(cityIndex, nearestCity, latitude, longitude), TOLERANCE);
+    }
+
+    /** Returns the same squared distance in degrees that CityIndex minimizes */
+    private static float getDistance(CityIndex cityIndex, int city, double latitude, double longitude) {
+        double longitudeDifference = cityIndex.getLongitude(city) - longitude;
+
+        if(longitudeDifference > 180) {
+            longitudeDifference -= 360;
+        } else if(longitudeDifference < -180) {
+            longitudeDifference += 360;
+        }
+
+        double latitudeDifference = cityIndex.getLatitude(city) - latitude;
+        longitudeDifference *= Math.cos(Math.toRadians(latitude));
+
+        return (float) (latitudeDifference * latitudeDifference + longitudeDifference * longitudeDifference);
+    }
+}
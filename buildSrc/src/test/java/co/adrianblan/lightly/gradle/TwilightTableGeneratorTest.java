@@ -0,0 +1,181 @@
+package co.adrianblan.lightly.gradle;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import co.adrianblan.lightly.suncycle.TwilightCalculator;
+import co.adrianblan.lightly.suncycle.TwilightTable;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that TwilightTable decodes what TwilightTableGenerator encodes, both for records written
+ * by hand with the NibbleWriter and for a whole generated table.
+ */
+public class TwilightTableGeneratorTest {
+
+    @Test
+    public void negativeDeltasAreSignExtended() throws IOException {
+        int[] begins = { 600, 607, 600, 599, 600, 593, 593 };
+        int[] ends = { 1000, 1001, 994, 1001, 1000, 1000, 993 };
+
+        assertRoundTrip(begins, ends);
+    }
+
+    @Test
+    public void deltasOfEightAreEscaped() throws IOException {
+        int[] begins = { 600, 608, 600, 592, 599, 0, 720 };
+        int[] ends = { 0, 1440, 0, 8, 0, 1440, 720 };
+
+        assertRoundTrip(begins, ends);
+
+        // Both values of the first day are escaped, and the delta of 8 of the second day as well
+        TwilightTableGenerator.NibbleWriter writer = new TwilightTableGenerator.NibbleWriter();
+        writer.writeValue(600, Integer.MIN_VALUE);
+        writer.writeValue(1000, Integer.MIN_VALUE);
+        writer.writeValue(608, 600);
+        writer.writeValue(1001, 1000);
+
+        byte[] record = writer.toByteArray();
+        assertEquals(8, record.length);
+        assertEquals(TwilightTable.ESCAPE_NIBBLE, (record[5] >> 4) & 0xF);
+        assertEquals(1, record[7] & 0xF);
+    }
+
+    @Test
+    public void oddNibbleCountIsPaddedToAByte() {
+        TwilightTableGenerator.NibbleWriter writer = new TwilightTableGenerator.NibbleWriter();
+        writer.writeValue(0x5A3, Integer.MIN_VALUE);
+
+        byte[] record = writer.toByteArray();
+        assertEquals(3, record.length);
+        assertEquals((byte) 0x80, record[0]);
+        assertEquals((byte) 0x5A, record[1]);
+        assertEquals((byte) 0x30, record[2]);
+    }
+
+    @Test
+    public void recordsAreFoundAtTheirByteOffsets() throws IOException {
+        TwilightTableGenerator.NibbleWriter writer = new TwilightTableGenerator.NibbleWriter();
+
+        // One day is 10 nibbles, so the next record starts at an odd byte and an even nibble
+        writer.writeValue(300, Integer.MIN_VALUE);
+        writer.writeValue(1200, Integer.MIN_VALUE);
+        byte[] first = writer.toByteArray();
+
+        // A value that is never read pads this record to a byte
+        writer.reset();
+        writer.writeValue(400, Integer.MIN_VALUE);
+        writer.writeValue(1100, Integer.MIN_VALUE);
+        writer.writeValue(401, 400);
+        byte[] second = writer.toByteArray();
+
+        writer.reset();
+        writer.writeValue(500, Integer.MIN_VALUE);
+        writer.writeValue(1000, Integer.MIN_VALUE);
+        byte[] third = writer.toByteArray();
+
+        assertEquals(5, first.length);
+        assertEquals(6, second.length);
+
+        TwilightTable twilightTable = getTwilightTable(1, first, second, third);
+
+        assertTwilight(twilightTable, 0, 0, 300, 1200);
+        assertTwilight(twilightTable, 1, 0, 400, 1100);
+        assertTwilight(twilightTable, 2, 0, 500, 1000);
+    }
+
+    @Test
+    public void generatedTableMatchesTheCalculator() throws IOException {
+        double[][] locations = { { 59.33, 18.07 }, { -33.87, 151.21 }, { 78.22, 15.65 }, { -89.99, -180 }, { 0, 180 } };
+        TwilightTableGenerator generator = new TwilightTableGenerator();
+
+        for(double[] location : locations) {
+            generator.addLocation(location[0], location[1]);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        TwilightTable twilightTable;
+
+        try {
+            twilightTable = new TwilightTable(ByteBuffer.wrap(generator.toByteArray(pool)));
+        } finally {
+            pool.shutdown();
+        }
+
+        long[] times = new long[2];
+
+        for(int location = 0; location < locations.length; location++) {
+            for(int day = 0; day < TwilightTable.DAYS_PER_YEAR; day++) {
+                long meanMidnightMillis = TwilightTable.getMeanMidnightMillis(
+                        TwilightTable.YEAR_START_MILLIS + day * TwilightCalculator.MILLIS_PER_DAY, locations[location][1]);
+                TwilightCalculator.getTwilight(meanMidnightMillis, locations[location][0], locations[location][1], times);
+
+                assertTwilight(twilightTable, location, day, getMinutes(times[0] - meanMidnightMillis),
+                        getMinutes(times[1] - meanMidnightMillis));
+            }
+        }
+    }
+
+    /** Encodes the twilights of every day as one record, and asserts that every day decodes to them */
+    private static void assertRoundTrip(int[] begins, int[] ends) throws IOException {
+        TwilightTableGenerator.NibbleWriter writer = new TwilightTableGenerator.NibbleWriter();
+
+        for(int day = 0; day < begins.length; day++) {
+            writer.writeValue(begins[day], day > 0 ? begins[day - 1] : Integer.MIN_VALUE);
+            writer.writeValue(ends[day], day > 0 ? ends[day - 1] : Integer.MIN_VALUE);
+        }
+
+        TwilightTable twilightTable = getTwilightTable(begins.length, writer.toByteArray());
+
+        for(int day = 0; day < begins.length; day++) {
+            assertTwilight(twilightTable, 0, day, begins[day], ends[day]);
+        }
+    }
+
+    private static void assertTwilight(TwilightTable twilightTable, int location, int day, int begin, int end) {
+        int twilight = twilightTable.getTwilight(location, day);
+
+        assertEquals("Begin of location " + location + " on day " + day, begin, TwilightTable.getBeginMinutes(twilight));
+        assertEquals("End of location " + location + " on day " + day, end, TwilightTable.getEndMinutes(twilight));
+    }
+
+    /** Lays out records in a table the way TwilightTableGenerator does */
+    private static TwilightTable getTwilightTable(int dayCount, byte[]... records) throws IOException {
+        ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(tableBytes);
+
+        output.writeInt(TwilightTable.MAGIC);
+        output.writeInt(TwilightTable.VERSION);
+        output.writeInt(records.length);
+        output.writeInt(dayCount);
+        output.writeInt(TwilightTable.HEADER_SIZE + records.length * TwilightTable.LOCATION_SIZE);
+
+        int recordOffset = 0;
+
+        for(byte[] record : records) {
+            output.writeShort(0);
+            output.writeShort(0);
+            output.writeInt(recordOffset);
+            recordOffset += record.length;
+        }
+
+        for(byte[] record : records) {
+            output.write(record);
+        }
+
+        output.flush();
+        return new TwilightTable(ByteBuffer.wrap(tableBytes.toByteArray()));
+    }
+
+    /** Rounds milliseconds to minutes, clamped to a day, as the generator does */
+    private static int getMinutes(long millis) {
+        int minutes = (int) Math.round(millis / 60000.0);
+        return Math.max(0, Math.min(minutes, TwilightTable.MINUTES_PER_DAY));
+    }
+}